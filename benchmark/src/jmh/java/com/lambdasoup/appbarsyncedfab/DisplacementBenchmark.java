@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of the displacement math for a single offset event, replayed from a scroll trace; geometry is
+ * that of a regular FAB on a phone screen. Composing the translation and writing it to the view are
+ * not part of this; the scenario tests of the library cover those, on real views.
+ * <p/>
+ * Run with the gc profiler (configured in build.gradle) to see the allocations per event. All
+ * displacement curves are lookup tables, so the curve should not make a difference.
+ */
+@State(Scope.Thread)
+public class DisplacementBenchmark {
+
+    private static final int TOTAL_SCROLL_RANGE = 168;
+    private static final int PARENT_BOTTOM = 1794;
+    private static final int FAB_TOP = 1570;
+
+    @Param({ScrollTraces.DRAG, ScrollTraces.FLING, ScrollTraces.SNAP})
+    public String trace;
+
+    @Param({"linear", "easeIn", "delayed", "sampled"})
+    public String curve;
+
+    private DisplacementCurve displacementCurve;
+    private int[] offsets;
+    private int cursor;
+
+    private float translationY;
+    private float translationYByThis;
+
+    @Setup
+    public void setUp() {
+        displacementCurve = createCurve(curve);
+        offsets = ScrollTraces.create(trace, TOTAL_SCROLL_RANGE);
+        cursor = 0;
+        translationY = 0;
+        translationYByThis = 0;
+    }
+
+    @Benchmark
+    public float offsetEvent() {
+        int verticalOffset = offsets[cursor];
+        cursor = cursor + 1 == offsets.length ? 0 : cursor + 1;
+
+        float fraction = Displacement.collapseFraction(verticalOffset, TOTAL_SCROLL_RANGE);
+        float fullDisplacement = Displacement.fullDisplacement(PARENT_BOTTOM, FAB_TOP, translationY, translationYByThis);
+        float newTranslationYByThis = Displacement.translationYByThis(fullDisplacement, displacementCurve.map(fraction));
+        // the displacement is the only translation of the view here
+        translationY += newTranslationYByThis - translationYByThis;
+        translationYByThis = newTranslationYByThis;
+        return translationY;
+    }
+
+    private static DisplacementCurve createCurve(String name) {
+        switch (name) {
+            case "linear":
+                return DisplacementCurve.LINEAR;
+            case "easeIn":
+                return DisplacementCurve.easeIn();
+            case "delayed":
+                return DisplacementCurve.delayed(0.5f);
+            case "sampled":
+                // stand-in for an arbitrary interpolator, as sampled by the behavior
+                float[] samples = new float[DisplacementCurve.SAMPLE_COUNT];
+                for (int i = 0; i < samples.length; i++) {
+                    double t = i / (double) (samples.length - 1);
+                    samples[i] = (float) ((Math.cos((t + 1) * Math.PI) / 2.0) + 0.5);
+                }
+                return new DisplacementCurve(samples);
+            default:
+                throw new IllegalArgumentException("unknown curve " + name);
+        }
+    }
+}
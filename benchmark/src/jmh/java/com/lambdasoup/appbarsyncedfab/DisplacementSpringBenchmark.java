@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of one animation frame of the snackbar displacement spring. Every few frames the target
+ * changes, as it does when snackbars get replaced while the FAB is still moving.
+ */
+@State(Scope.Thread)
+public class DisplacementSpringBenchmark {
+
+    private static final float FRAME_SECONDS = 1 / 60f;
+    private static final float[] TARGETS = {-144f, 0f, -96f, -144f, 0f};
+    private static final int FRAMES_PER_TARGET = 7;
+
+    private DisplacementSpring spring;
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        spring = new DisplacementSpring(22.0f);
+        frame = 0;
+    }
+
+    @Benchmark
+    public float animationFrame() {
+        if (frame % FRAMES_PER_TARGET == 0) {
+            spring.setTarget(TARGETS[(frame / FRAMES_PER_TARGET) % TARGETS.length]);
+        }
+        frame++;
+        spring.step(FRAME_SECONDS);
+        return spring.getPosition();
+    }
+}
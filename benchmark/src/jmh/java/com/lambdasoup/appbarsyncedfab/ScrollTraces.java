@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+/**
+ * Synthetic but realistic sequences of AppBarLayout vertical offsets, one entry per frame at 60fps,
+ * as they get delivered to OnOffsetChangedListeners while the user scrolls a list.
+ */
+final class ScrollTraces {
+
+    static final String DRAG = "drag";
+    static final String FLING = "fling";
+    static final String SNAP = "snap";
+
+    private static final float FRAME_SECONDS = 1 / 60f;
+
+    private ScrollTraces() {
+    }
+
+    static int[] create(String name, int totalScrollRange) {
+        switch (name) {
+            case DRAG:
+                return drag(totalScrollRange);
+            case FLING:
+                return fling(totalScrollRange);
+            case SNAP:
+                return snap(totalScrollRange);
+            default:
+                throw new IllegalArgumentException("unknown trace " + name);
+        }
+    }
+
+    /**
+     * Finger slowly dragging the list up and down again over four seconds; the app bar
+     * collapses and expands fully once.
+     */
+    private static int[] drag(int totalScrollRange) {
+        int[] offsets = new int[240];
+        for (int i = 0; i < offsets.length; i++) {
+            double phase = 2 * Math.PI * i / offsets.length;
+            offsets[i] = -(int) Math.round(totalScrollRange * (1 - Math.cos(phase)) / 2);
+        }
+        return offsets;
+    }
+
+    /**
+     * Fling up followed by a fling down, each decelerating under friction; the app bar
+     * collapses within the first few frames and then stays pinned while the list keeps going.
+     */
+    private static int[] fling(int totalScrollRange) {
+        int[] offsets = new int[180];
+        float position = 0;
+        float velocity = 8000;
+        for (int i = 0; i < offsets.length; i++) {
+            if (i == offsets.length / 2) {
+                velocity = -8000;
+            }
+            position += velocity * FRAME_SECONDS;
+            velocity *= 0.95f;
+            position = Math.max(0, Math.min(totalScrollRange, position));
+            offsets[i] = -Math.round(position);
+        }
+        return offsets;
+    }
+
+    /**
+     * Short partial drags, each released somewhere in the middle and then snapped to the closer
+     * end by an animation of a dozen frames.
+     */
+    private static int[] snap(int totalScrollRange) {
+        int[] offsets = new int[200];
+        int i = 0;
+        int drag = 0;
+        while (i < offsets.length) {
+            // drag to a point between 20% and 80% of the range, alternating
+            int released = (drag++ % 2 == 0) ? totalScrollRange * 3 / 10 : totalScrollRange * 7 / 10;
+            int target = released < totalScrollRange / 2 ? 0 : totalScrollRange;
+            for (int f = 1; f <= 8 && i < offsets.length; f++) {
+                offsets[i++] = -released * f / 8;
+            }
+            for (int f = 1; f <= 12 && i < offsets.length; f++) {
+                float t = f / 12f;
+                float eased = 1 - (1 - t) * (1 - t);
+                offsets[i++] = -Math.round(released + (target - released) * eased);
+            }
+        }
+        return offsets;
+    }
+}
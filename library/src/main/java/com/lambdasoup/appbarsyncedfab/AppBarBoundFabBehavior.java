@@ -16,143 +16,203 @@
 
 package com.lambdasoup.appbarsyncedfab;
 
-import android.animation.ValueAnimator;
+import android.animation.TimeInterpolator;
 import android.content.Context;
+import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.view.View;
 
 import com.google.android.material.appbar.AppBarLayout;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
-import com.google.android.material.snackbar.Snackbar;
-
-import java.util.List;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.coordinatorlayout.widget.CoordinatorLayout;
-import androidx.interpolator.view.animation.FastOutSlowInInterpolator;
+import androidx.core.view.WindowInsetsCompat;
 
 /**
  * Behavior for FABs that does not support anchoring to AppBarLayout, but instead translates the FAB
  * out of the bottom in sync with the AppBarLayout collapsing towards the top.
  * <p/>
- * Extends FloatingActionButton.Behavior to keep using the pre-Lollipop shadow padding offset.
+ * Extends FloatingActionButton.Behavior to keep using the pre-Lollipop shadow padding offset; the
+ * syncing itself is done by an {@link AppBarSyncedBehavior} this behavior delegates to, so the FAB
+ * shares the offset dispatch of its AppBarLayout with all other synced views.
  * <p/>
  * Replaces inbuilt Snackbar displacement by a relative version that does not interfere with other
  * sources of translation for the FAB; in particular not translation from the sync to the scrolling AppBarLayout.
+ * Further kinds of obstructions, like bottom sheets or banners, can be added with
+ * {@link #addObstructionProvider(ObstructionProvider)}.
  */
 @SuppressWarnings("unused")
 public class AppBarBoundFabBehavior extends FloatingActionButton.Behavior {
 
-    // Whether we already registered our OnOffsetChangedListener with the AppBarLayout
-    // Does not get saved in instance state, because AppBarLayout does not save its listeners either
-    private boolean listenerRegistered = false;
-
+    /**
+     * @see AppBarSyncedBehavior#MODE_CONTINUOUS
+     */
+    public static final int MODE_CONTINUOUS = AppBarSyncedBehavior.MODE_CONTINUOUS;
+    /**
+     * @see AppBarSyncedBehavior#MODE_THRESHOLD
+     */
+    public static final int MODE_THRESHOLD = AppBarSyncedBehavior.MODE_THRESHOLD;
 
-    private ValueAnimator snackbarFabTranslationYAnimator;
-    // respect that other code may also change y translation; keep track of the part coming from us
-    private float snackbarFabTranslationYByThis;
+    private final AppBarSyncedBehavior<FloatingActionButton> syncedBehavior;
 
     public AppBarBoundFabBehavior(Context context, AttributeSet attrs) {
         super();
+        syncedBehavior = new AppBarSyncedBehavior<>(context, attrs);
+        syncedBehavior.addObstructionProvider(Obstructions.SNACKBAR);
+    }
+
+    /**
+     * @see AppBarSyncedBehavior#setDisplacementInterpolator(TimeInterpolator)
+     */
+    public void setDisplacementInterpolator(@Nullable TimeInterpolator interpolator) {
+        syncedBehavior.setDisplacementInterpolator(interpolator);
+    }
+
+    /**
+     * @see AppBarSyncedBehavior#setDisplacementMode(int)
+     */
+    public void setDisplacementMode(int displacementMode) {
+        syncedBehavior.setDisplacementMode(displacementMode);
     }
 
+    /**
+     * @see AppBarSyncedBehavior#setThresholds(float, float)
+     */
+    public void setThresholds(float hideThreshold, float showThreshold) {
+        syncedBehavior.setThresholds(hideThreshold, showThreshold);
+    }
+
+    /**
+     * @see AppBarSyncedBehavior#setCoalesceTranslationUpdates(boolean)
+     */
+    public void setCoalesceTranslationUpdates(boolean coalesceTranslationUpdates) {
+        syncedBehavior.setCoalesceTranslationUpdates(coalesceTranslationUpdates);
+    }
+
+    /**
+     * @see AppBarSyncedBehavior#setPredictFlings(boolean)
+     */
+    public void setPredictFlings(boolean predictFlings) {
+        syncedBehavior.setPredictFlings(predictFlings);
+    }
+
+    /**
+     * @see AppBarSyncedBehavior#setAppBarLayout(View, AppBarLayout)
+     */
+    public void setAppBarLayout(@NonNull FloatingActionButton child, @Nullable AppBarLayout appBarLayout) {
+        syncedBehavior.setAppBarLayout(child, appBarLayout);
+    }
+
+    /**
+     * @see AppBarSyncedBehavior#addObstructionProvider(ObstructionProvider)
+     */
+    public void addObstructionProvider(@NonNull ObstructionProvider provider) {
+        syncedBehavior.addObstructionProvider(provider);
+    }
+
+    /**
+     * @see AppBarSyncedBehavior#removeObstructionProvider(ObstructionProvider)
+     */
+    public void removeObstructionProvider(@NonNull ObstructionProvider provider) {
+        syncedBehavior.removeObstructionProvider(provider);
+    }
+
+    /**
+     * @see AppBarSyncedBehavior#setQualityGovernor(QualityGovernor)
+     */
+    public void setQualityGovernor(@Nullable QualityGovernor qualityGovernor) {
+        syncedBehavior.setQualityGovernor(qualityGovernor);
+    }
+
+    /**
+     * @see AppBarSyncedBehavior#setEventRecorder(EventRecorder)
+     */
+    public void setEventRecorder(@Nullable EventRecorder eventRecorder) {
+        syncedBehavior.setEventRecorder(eventRecorder);
+    }
+
+    /**
+     * @see AppBarSyncedBehavior#setMetrics(SyncMetrics)
+     */
+    public void setMetrics(@Nullable SyncMetrics metrics) {
+        syncedBehavior.setMetrics(metrics);
+    }
 
     @Override
     public boolean layoutDependsOn(@NonNull CoordinatorLayout parent, @NonNull FloatingActionButton child, @NonNull View dependency) {
-        if (dependency instanceof AppBarLayout && !listenerRegistered) {
-            ((AppBarLayout) dependency).addOnOffsetChangedListener(new FabOffsetter(parent, child));
-            listenerRegistered = true;
-        }
-        return dependency instanceof AppBarLayout || super.layoutDependsOn(parent, child, dependency);
+        return syncedBehavior.layoutDependsOn(parent, child, dependency)
+                || super.layoutDependsOn(parent, child, dependency);
     }
 
+    @NonNull
     @Override
-    public boolean onDependentViewChanged(CoordinatorLayout parent, FloatingActionButton fab, View dependency) {
-        //noinspection SimplifiableIfStatement
-        if (dependency instanceof AppBarLayout) {
-            // if the dependency is an AppBarLayout, do not allow super to react on that
-            // we don't want that behavior
-            return true;
-        } else if (dependency instanceof Snackbar.SnackbarLayout) {
-            updateFabTranslationForSnackbar(parent, fab, dependency);
-            return true;
-        }
-        return super.onDependentViewChanged(parent, fab, dependency);
+    public WindowInsetsCompat onApplyWindowInsets(@NonNull CoordinatorLayout coordinatorLayout,
+                                                  @NonNull FloatingActionButton child, @NonNull WindowInsetsCompat insets) {
+        return syncedBehavior.onApplyWindowInsets(coordinatorLayout, child,
+                super.onApplyWindowInsets(coordinatorLayout, child, insets));
     }
 
     @Override
-    public void onDependentViewRemoved(@NonNull CoordinatorLayout parent, @NonNull FloatingActionButton child,
-                                       @NonNull View dependency) {
-        if (dependency instanceof Snackbar.SnackbarLayout) {
-            updateFabTranslationForSnackbar(parent, child, dependency);
-        }
+    public boolean onStartNestedScroll(@NonNull CoordinatorLayout coordinatorLayout, @NonNull FloatingActionButton child,
+                                       @NonNull View directTargetChild, @NonNull View target, int axes, int type) {
+        return syncedBehavior.onStartNestedScroll(coordinatorLayout, child, directTargetChild, target, axes, type);
     }
 
-    private void updateFabTranslationForSnackbar(CoordinatorLayout parent,
-                                                 final FloatingActionButton fab, View snackbar) {
-
-        // We want to introduce additional y-translation (with respect to what's already there),
-        // by the current visible height of any snackbar
-        final float targetTransYByThis = getVisibleHeightOfOverlappingSnackbar(parent, fab);
+    @Override
+    public boolean onNestedPreFling(@NonNull CoordinatorLayout coordinatorLayout, @NonNull FloatingActionButton child,
+                                    @NonNull View target, float velocityX, float velocityY) {
+        return syncedBehavior.onNestedPreFling(coordinatorLayout, child, target, velocityX, velocityY);
+    }
 
-        if (snackbarFabTranslationYByThis == targetTransYByThis) {
-            // We're already at (or currently animating to) the target value, return...
-            return;
-        }
+    @Override
+    public void onStopNestedScroll(@NonNull CoordinatorLayout coordinatorLayout, @NonNull FloatingActionButton child,
+                                   @NonNull View target, int type) {
+        syncedBehavior.onStopNestedScroll(coordinatorLayout, child, target, type);
+    }
 
-        final float currentTransY = fab.getTranslationY();
+    @Override
+    public boolean onLayoutChild(@NonNull CoordinatorLayout parent, @NonNull FloatingActionButton child,
+                                 int layoutDirection) {
+        boolean handled = super.onLayoutChild(parent, child, layoutDirection);
+        syncedBehavior.onChildLaidOut(parent, child);
+        return handled;
+    }
 
-        // Calculate difference between what we want now and what we wanted earlier
-        final float stepTransYDelta = targetTransYByThis - snackbarFabTranslationYByThis;
+    @Override
+    public Parcelable onSaveInstanceState(CoordinatorLayout parent, FloatingActionButton child) {
+        return syncedBehavior.onSaveInstanceState(parent, child);
+    }
 
-        // ... and we're going to change the current state just by the difference
-        final float targetTransY = currentTransY + stepTransYDelta;
+    @Override
+    public void onRestoreInstanceState(CoordinatorLayout parent, FloatingActionButton child, Parcelable state) {
+        syncedBehavior.onRestoreInstanceState(parent, child, state);
+    }
 
-        // Make sure that any current animation is cancelled
-        if (snackbarFabTranslationYAnimator != null && snackbarFabTranslationYAnimator.isRunning()) {
-            snackbarFabTranslationYAnimator.cancel();
-        }
+    @Override
+    public void onDetachedFromLayoutParams() {
+        super.onDetachedFromLayoutParams();
+        syncedBehavior.onDetachedFromLayoutParams();
+    }
 
-        if (fab.isShown()
-                && Math.abs(currentTransY - targetTransY) > (fab.getHeight() * 0.667f)) {
-            // If the FAB will be travelling by more than 2/3 of it's height, let's animate
-            // it instead
-            if (snackbarFabTranslationYAnimator == null) {
-                snackbarFabTranslationYAnimator = ValueAnimator.ofFloat(currentTransY, targetTransY);
-                snackbarFabTranslationYAnimator.setInterpolator(new FastOutSlowInInterpolator());
-                snackbarFabTranslationYAnimator.addUpdateListener(
-                        new ValueAnimator.AnimatorUpdateListener() {
-                            @Override
-                            public void onAnimationUpdate(ValueAnimator animator) {
-                                fab.setTranslationY((Float) animator.getAnimatedValue());
-                            }
-                        }
-                );
-            }
-            snackbarFabTranslationYAnimator.start();
-        } else {
-            // Now update the translation Y
-            fab.setTranslationY(targetTransY);
+    @Override
+    public boolean onDependentViewChanged(CoordinatorLayout parent, FloatingActionButton fab, View dependency) {
+        if (syncedBehavior.isSyncDependency(dependency)) {
+            // if the dependency is an AppBarLayout or an obstruction, do not allow super to react on that
+            // we don't want that behavior
+            return syncedBehavior.onDependentViewChanged(parent, fab, dependency);
         }
-
-        snackbarFabTranslationYByThis = targetTransYByThis;
+        return super.onDependentViewChanged(parent, fab, dependency);
     }
 
-    /**
-     * returns visible height of snackbar, if snackbar is overlapping fab
-     * 0 otherwise
-     */
-    private float getVisibleHeightOfOverlappingSnackbar(CoordinatorLayout parent,
-                                                        FloatingActionButton fab) {
-        float minOffset = 0;
-        final List<View> dependencies = parent.getDependencies(fab);
-        for (int i = 0, z = dependencies.size(); i < z; i++) {
-            final View view = dependencies.get(i);
-            if (view instanceof Snackbar.SnackbarLayout && parent.doViewsOverlap(fab, view)) {
-                minOffset = Math.min(minOffset, view.getTranslationY() - view.getHeight());
-            }
+    @Override
+    public void onDependentViewRemoved(@NonNull CoordinatorLayout parent, @NonNull FloatingActionButton child,
+                                       @NonNull View dependency) {
+        if (syncedBehavior.isSyncDependency(dependency)) {
+            syncedBehavior.onDependentViewRemoved(parent, child, dependency);
+        } else {
+            super.onDependentViewRemoved(parent, child, dependency);
         }
-
-        return minOffset;
     }
 }
@@ -0,0 +1,839 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import android.animation.TimeInterpolator;
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewParent;
+import android.view.animation.AnimationUtils;
+
+import com.google.android.material.appbar.AppBarLayout;
+
+import java.util.Arrays;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.coordinatorlayout.widget.CoordinatorLayout;
+import androidx.core.view.ViewCompat;
+import androidx.core.view.WindowInsetsCompat;
+import androidx.customview.view.AbsSavedState;
+
+/**
+ * Behavior for any view at the bottom of a CoordinatorLayout - extended FABs, bottom navigation bars,
+ * bottom toolbars, mini players - that translates the view out of the bottom in sync with the
+ * AppBarLayout collapsing towards the top.
+ * <p/>
+ * All views synced to the same AppBarLayout share a single OnOffsetChangedListener on it, and all
+ * translation of a view is composed by its {@link TranslationRegistry}, the displacements of this library
+ * being components of their own; views don't fight over translationY, and other sources of translation
+ * are respected.
+ * <p/>
+ * Optionally, flings of the scrolling content are followed by a single animation to where the
+ * AppBarLayout is predicted to settle, instead of by a translation update per offset change.
+ * <p/>
+ * The view also moves up out of the way of views obstructing the bottom of the CoordinatorLayout -
+ * snackbars, bottom sheets, banners - by an animated translation. Which views count as
+ * obstructions is up to the {@link ObstructionProvider}s added; there are none by default.
+ * <p/>
+ * In edge-to-edge layouts, the view is displaced until it is behind the system bars or the keyboard at
+ * the bottom, instead of until the bottom of the CoordinatorLayout. CoordinatorLayout dispatches window
+ * insets to behaviors of children that have fitsSystemWindows set only; without it, the displacement
+ * goes all the way to the bottom of the CoordinatorLayout.
+ * <p/>
+ * The view is bound to the AppBarLayout only while it is attached to the window, and gets rebound when
+ * the AppBarLayout in the CoordinatorLayout is replaced by another one; nothing stays registered with
+ * AppBarLayouts the view is no longer shown with.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class AppBarSyncedBehavior<V extends View> extends CoordinatorLayout.Behavior<V> {
+
+    /**
+     * The view follows the collapse of the AppBarLayout continuously, with one translation update per
+     * offset change. This is the default.
+     */
+    public static final int MODE_CONTINUOUS = 0;
+    /**
+     * The view gets hidden by a single animation when the collapse reaches the hide threshold, and shown
+     * again when it drops to the show threshold.
+     */
+    public static final int MODE_THRESHOLD = 1;
+
+    private static final float DEFAULT_HIDE_THRESHOLD = 0.6f;
+    private static final float DEFAULT_SHOW_THRESHOLD = 0.4f;
+
+    // settles in about 300ms, like the standard snackbar animation
+    private static final float OBSTRUCTION_SPRING_OMEGA = 22.0f;
+    // longest time step for the spring; longer frame gaps just slow down the animation
+    private static final long OBSTRUCTION_SPRING_MAX_FRAME_MILLIS = 50;
+
+    // values of the appbarsyncedfab_displacementCurve attribute
+    private static final int CURVE_LINEAR = 0;
+    private static final int CURVE_EASE_IN = 1;
+    private static final int CURVE_DELAYED = 2;
+    private static final float DEFAULT_CURVE_DELAY = 0.5f;
+
+    // The dispatcher of the AppBarLayout we bound the view to, while bound
+    // Does not get saved in instance state, because AppBarLayout does not save its listeners either
+    private OffsetDispatcher offsetDispatcher;
+    // AppBarLayout set explicitly to be synced to instead of the one among the dependencies, if any
+    private AppBarLayout syncedAppBarLayout;
+    // Unbinds when the view leaves the window, binds again when it comes back
+    private final View.OnAttachStateChangeListener attachStateListener = new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(View v) {
+            if (offsetDispatcher == null && v.getParent() instanceof CoordinatorLayout) {
+                CoordinatorLayout parent = (CoordinatorLayout) v.getParent();
+                AppBarLayout appBarLayout = findAppBarLayout(parent, v);
+                if (appBarLayout != null) {
+                    bind(parent, v, appBarLayout);
+                }
+                // otherwise dependencies are not known yet; binding happens in layoutDependsOn then
+            }
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            // keep the displacement, so that the view continues from there when it comes back
+            unbind(v, true);
+            obstructionSolver.clear();
+        }
+    };
+    private DisplacementCurve displacementCurve = DisplacementCurve.LINEAR;
+    private int displacementMode = MODE_CONTINUOUS;
+    private float hideThreshold = DEFAULT_HIDE_THRESHOLD;
+    private float showThreshold = DEFAULT_SHOW_THRESHOLD;
+
+    private SyncMetrics metrics;
+    private EventRecorder eventRecorder;
+    private QualityGovernor qualityGovernor;
+
+    // bottom inset as of the last insets dispatch; given to every dispatcher the view gets bound to
+    private int bottomInset = 0;
+
+    // Whether flings are followed by a single animation to the predicted displacement
+    private boolean predictFlings = false;
+    // created lazily, needs the screen density
+    private FlingPredictor flingPredictor;
+
+    // Whether translation changes of the view are written once per frame instead of immediately
+    private boolean coalesceTranslationUpdates = false;
+    private TranslationRegistry translationRegistry;
+
+    private ObstructionProvider[] obstructionProviders = new ObstructionProvider[0];
+    private final ObstructionSolver obstructionSolver = new ObstructionSolver();
+    // position of the spring is the part of the translation we want to come from us
+    private final DisplacementSpring obstructionTranslationYSpring = new DisplacementSpring(OBSTRUCTION_SPRING_OMEGA);
+    private ObstructionSpringAnimation obstructionSpringAnimation;
+    // other code may also change y translation; the part coming from us is a component of its own
+    private TranslationRegistry.Component obstructionTranslation;
+
+    // translation parts from saved instance state, waiting for the first layout to be applied
+    private SavedState restoredState;
+
+    public AppBarSyncedBehavior() {
+        super();
+    }
+
+    public AppBarSyncedBehavior(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.AppBarSyncedBehavior);
+        coalesceTranslationUpdates = a.getBoolean(
+                R.styleable.AppBarSyncedBehavior_appbarsyncedfab_coalesceTranslationUpdates, false);
+        predictFlings = a.getBoolean(R.styleable.AppBarSyncedBehavior_appbarsyncedfab_predictFlings, false);
+        if (a.getBoolean(R.styleable.AppBarSyncedBehavior_appbarsyncedfab_adaptiveQuality, false)) {
+            qualityGovernor = new QualityGovernor();
+        }
+        int interpolatorResId = a.getResourceId(
+                R.styleable.AppBarSyncedBehavior_appbarsyncedfab_displacementInterpolator, 0);
+        int curve = a.getInt(R.styleable.AppBarSyncedBehavior_appbarsyncedfab_displacementCurve, CURVE_LINEAR);
+        float curveDelay = a.getFloat(
+                R.styleable.AppBarSyncedBehavior_appbarsyncedfab_displacementCurveDelay, DEFAULT_CURVE_DELAY);
+        int mode = a.getInt(R.styleable.AppBarSyncedBehavior_appbarsyncedfab_displacementMode, MODE_CONTINUOUS);
+        float hide = a.getFloat(R.styleable.AppBarSyncedBehavior_appbarsyncedfab_hideThreshold, DEFAULT_HIDE_THRESHOLD);
+        float show = a.getFloat(R.styleable.AppBarSyncedBehavior_appbarsyncedfab_showThreshold, DEFAULT_SHOW_THRESHOLD);
+        a.recycle();
+
+        setThresholds(hide, show);
+        setDisplacementMode(mode);
+
+        if (interpolatorResId != 0) {
+            displacementCurve = sample(AnimationUtils.loadInterpolator(context, interpolatorResId));
+        } else if (curve == CURVE_EASE_IN) {
+            displacementCurve = DisplacementCurve.easeIn();
+        } else if (curve == CURVE_DELAYED) {
+            displacementCurve = DisplacementCurve.delayed(curveDelay);
+        }
+    }
+
+    /**
+     * Sets the curve along which the view gets displaced while the AppBarLayout collapses: the
+     * interpolator maps the collapse fraction to the fraction of the full displacement. Pass null
+     * for a displacement proportional to the collapse, which is the default.
+     * <p/>
+     * The interpolator is sampled once, here; later changes in its behavior are not picked up.
+     */
+    public void setDisplacementInterpolator(@Nullable TimeInterpolator interpolator) {
+        displacementCurve = interpolator == null ? DisplacementCurve.LINEAR : sample(interpolator);
+        if (offsetDispatcher != null) {
+            offsetDispatcher.setCurve(translationRegistry.getView(), displacementCurve);
+        }
+    }
+
+    /**
+     * Sets whether the view follows the collapse of the AppBarLayout continuously ({@link #MODE_CONTINUOUS}),
+     * or gets hidden and shown by a single animation each, at thresholds ({@link #MODE_THRESHOLD}).
+     * Between the thresholds, offset events cost no translation work at all, which is lighter on heavy
+     * screens. Obstruction displacement and other sources of translation combine with either mode.
+     */
+    public void setDisplacementMode(int displacementMode) {
+        if (displacementMode != MODE_CONTINUOUS && displacementMode != MODE_THRESHOLD) {
+            throw new IllegalArgumentException("unknown displacement mode " + displacementMode);
+        }
+        this.displacementMode = displacementMode;
+        updateDispatcherThresholds();
+    }
+
+    /**
+     * Sets the collapse fractions at which the view gets hidden and shown again in {@link #MODE_THRESHOLD}.
+     * The show threshold must not be above the hide threshold; the gap between them keeps the view from
+     * bouncing when the AppBarLayout hovers around a threshold.
+     */
+    public void setThresholds(float hideThreshold, float showThreshold) {
+        if (showThreshold > hideThreshold) {
+            throw new IllegalArgumentException("show threshold " + showThreshold
+                    + " must not be above hide threshold " + hideThreshold);
+        }
+        this.hideThreshold = hideThreshold;
+        this.showThreshold = showThreshold;
+        updateDispatcherThresholds();
+    }
+
+    private void updateDispatcherThresholds() {
+        if (offsetDispatcher != null) {
+            View view = translationRegistry.getView();
+            offsetDispatcher.setThresholds(view, hideThreshold, showThreshold);
+            offsetDispatcher.setThresholdMode(view, displacementMode == MODE_THRESHOLD);
+        }
+    }
+
+    private static DisplacementCurve sample(TimeInterpolator interpolator) {
+        float[] samples = new float[DisplacementCurve.SAMPLE_COUNT];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = interpolator.getInterpolation(i / (float) (samples.length - 1));
+        }
+        return new DisplacementCurve(samples);
+    }
+
+    /**
+     * Opt in to collecting all translation changes of the view within a frame - from AppBarLayout
+     * offset changes as well as from obstruction displacement - and writing them as a single
+     * translation once per frame, right before it is drawn.
+     * Saves redundant property writes and invalidations when several offset events arrive in the same
+     * frame, for example during flings.
+     */
+    public void setCoalesceTranslationUpdates(boolean coalesceTranslationUpdates) {
+        this.coalesceTranslationUpdates = coalesceTranslationUpdates;
+        if (translationRegistry != null) {
+            translationRegistry.setCoalescing(coalesceTranslationUpdates);
+        }
+    }
+
+    /**
+     * Opt in to following flings of the scrolling content by a single animation: when a fling starts, the
+     * collapse fraction the AppBarLayout will settle at is predicted from the fling velocity, and the view
+     * animated to the matching displacement. Offset changes during the fling are
+     * not written, as long as they stay on the way to the prediction; per-frame tracking takes over
+     * again if they drift off, and when the fling ends. Has no effect in {@link #MODE_THRESHOLD}.
+     */
+    public void setPredictFlings(boolean predictFlings) {
+        this.predictFlings = predictFlings;
+    }
+
+    /**
+     * Syncs the view to the given AppBarLayout, instead of to the one among its dependencies; pass null
+     * to go back to that. Meant for pagers where each page has its own AppBarLayout, or where the
+     * scrolling content moves between pages, and the view lives outside of them: set the AppBarLayout
+     * of the page that gets selected. The view keeps its displacement and gets animated from there to
+     * the collapse of the new AppBarLayout, instead of jumping.
+     * <p/>
+     * The AppBarLayout is referenced until another one is set; set null when the page goes away for good.
+     */
+    public void setAppBarLayout(@NonNull V child, @Nullable AppBarLayout appBarLayout) {
+        syncedAppBarLayout = appBarLayout;
+        ViewParent parent = child.getParent();
+        if (!(parent instanceof CoordinatorLayout)) {
+            // binding happens once the view is attached
+            return;
+        }
+        AppBarLayout target = findAppBarLayout((CoordinatorLayout) parent, child);
+        if (offsetDispatcher != null && offsetDispatcher.getAppBarLayout() == target
+                && translationRegistry.getView() == child) {
+            return;
+        }
+        unbind(translationRegistry == null ? child : translationRegistry.getView(),
+                translationRegistry == null || translationRegistry.getView() == child);
+        if (target != null) {
+            bind((CoordinatorLayout) parent, child, target);
+        }
+    }
+
+    @Nullable
+    private AppBarLayout findAppBarLayout(CoordinatorLayout parent, View view) {
+        if (syncedAppBarLayout != null) {
+            return syncedAppBarLayout;
+        }
+        List<View> dependencies = parent.getDependencies(view);
+        for (int i = 0, z = dependencies.size(); i < z; i++) {
+            if (dependencies.get(i) instanceof AppBarLayout) {
+                return (AppBarLayout) dependencies.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Makes the view move out of the way of the obstructions recognized by the given provider, in addition
+     * to those of the providers added before. Takes effect when dependencies get determined next, which
+     * is on the next layout pass of the CoordinatorLayout.
+     */
+    public void addObstructionProvider(@NonNull ObstructionProvider provider) {
+        if (findObstructionProviderIndex(provider) < 0) {
+            obstructionProviders = Arrays.copyOf(obstructionProviders, obstructionProviders.length + 1);
+            obstructionProviders[obstructionProviders.length - 1] = provider;
+        }
+    }
+
+    /**
+     * Stops taking the obstructions of the given provider into account for views appearing from now on.
+     */
+    public void removeObstructionProvider(@NonNull ObstructionProvider provider) {
+        int index = findObstructionProviderIndex(provider);
+        if (index >= 0) {
+            ObstructionProvider[] providers = new ObstructionProvider[obstructionProviders.length - 1];
+            System.arraycopy(obstructionProviders, 0, providers, 0, index);
+            System.arraycopy(obstructionProviders, index + 1, providers, index, providers.length - index);
+            obstructionProviders = providers;
+        }
+    }
+
+    private int findObstructionProviderIndex(ObstructionProvider provider) {
+        for (int i = 0; i < obstructionProviders.length; i++) {
+            if (obstructionProviders[i] == provider) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Nullable
+    private ObstructionProvider getObstructionProvider(View dependency) {
+        for (ObstructionProvider provider : obstructionProviders) {
+            if (provider.isObstruction(dependency)) {
+                return provider;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Opt in to adapting the work per frame to frame pressure: while the AppBarLayout moves, the governor
+     * watches frame times, and under sustained long frames, or in power save mode, the view follows
+     * only every other offset event, and then switches to a single hide or show animation at the
+     * thresholds set with {@link #setThresholds(float, float)}. It recovers once frames are back
+     * within budget. Pass null to opt out. Views synced to the same AppBarLayout share the governor set
+     * last on any of their behaviors.
+     */
+    public void setQualityGovernor(@Nullable QualityGovernor qualityGovernor) {
+        this.qualityGovernor = qualityGovernor;
+        if (offsetDispatcher != null) {
+            offsetDispatcher.setQualityGovernor(translationRegistry.getView(), qualityGovernor);
+        }
+    }
+
+    /**
+     * Opt in to performance metrics for the offset and obstruction hot paths of this behavior; pass
+     * null to opt out. Offset events of an AppBarLayout are handled once for all views bound to it,
+     * and get reported to the metrics set last on any of their behaviors.
+     */
+    public void setMetrics(@Nullable SyncMetrics metrics) {
+        this.metrics = metrics;
+        if (translationRegistry != null) {
+            translationRegistry.setMetrics(metrics);
+        }
+        if (offsetDispatcher != null) {
+            offsetDispatcher.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Opt in to recording the events that move the view, for diagnosing jumps; pass null to opt out.
+     * Offset events of an AppBarLayout are recorded once for all views bound to it, to the recorder
+     * set last on any of their behaviors.
+     */
+    public void setEventRecorder(@Nullable EventRecorder eventRecorder) {
+        this.eventRecorder = eventRecorder;
+        if (translationRegistry != null) {
+            translationRegistry.setEventRecorder(eventRecorder);
+        }
+        if (offsetDispatcher != null) {
+            offsetDispatcher.setEventRecorder(eventRecorder);
+        }
+    }
+
+    private TranslationRegistry getTranslationRegistry(View view) {
+        if (translationRegistry == null || translationRegistry.getView() != view) {
+            translationRegistry = TranslationRegistry.of(view);
+            translationRegistry.setCoalescing(coalesceTranslationUpdates);
+            translationRegistry.setMetrics(metrics);
+            translationRegistry.setEventRecorder(eventRecorder);
+            obstructionTranslation = translationRegistry.getComponent(TranslationRegistry.COMPONENT_OBSTRUCTIONS);
+        }
+        return translationRegistry;
+    }
+
+    @Override
+    public boolean layoutDependsOn(@NonNull CoordinatorLayout parent, @NonNull V child, @NonNull View dependency) {
+        if (syncedAppBarLayout == null && dependency instanceof AppBarLayout && (offsetDispatcher == null
+                || offsetDispatcher.getAppBarLayout().getParent() != parent
+                || translationRegistry.getView() != child)) {
+            // not bound yet, or still bound to an AppBarLayout that has been replaced;
+            // the view takes its displacement along to the new one
+            unbind(translationRegistry == null ? child : translationRegistry.getView(),
+                    translationRegistry == null || translationRegistry.getView() == child);
+            bind(parent, child, (AppBarLayout) dependency);
+        }
+        return isSyncDependency(dependency);
+    }
+
+    /**
+     * Whether this behavior reacts on changes of the given dependency: AppBarLayouts and obstructions.
+     */
+    boolean isSyncDependency(@NonNull View dependency) {
+        return dependency instanceof AppBarLayout || getObstructionProvider(dependency) != null;
+    }
+
+    @NonNull
+    @Override
+    public WindowInsetsCompat onApplyWindowInsets(@NonNull CoordinatorLayout coordinatorLayout, @NonNull V child,
+                                                  @NonNull WindowInsetsCompat insets) {
+        // system bars and, with adjustResize, the keyboard; read once per dispatch, not per frame
+        bottomInset = insets.getSystemWindowInsetBottom();
+        if (offsetDispatcher != null) {
+            offsetDispatcher.setBottomInset(child, bottomInset);
+        }
+        return insets;
+    }
+
+    @Override
+    public boolean onStartNestedScroll(@NonNull CoordinatorLayout coordinatorLayout, @NonNull V child,
+                                       @NonNull View directTargetChild, @NonNull View target, int axes, int type) {
+        // only to be told about flings; nothing gets consumed
+        return predictFlings && (axes & ViewCompat.SCROLL_AXIS_VERTICAL) != 0;
+    }
+
+    @Override
+    public boolean onNestedPreFling(@NonNull CoordinatorLayout coordinatorLayout, @NonNull V child,
+                                    @NonNull View target, float velocityX, float velocityY) {
+        // Content flinging towards its end collapses the AppBarLayout right away. Towards its start, the
+        // AppBarLayout only expands with content that is at its start already; otherwise it depends on
+        // the scroll flags, so leave that to per-frame tracking.
+        if (predictFlings && offsetDispatcher != null && (velocityY > 0.0f || !target.canScrollVertically(-1))) {
+            if (flingPredictor == null) {
+                flingPredictor = new FlingPredictor(ViewConfiguration.getScrollFriction(),
+                        child.getResources().getDisplayMetrics().density);
+            }
+            offsetDispatcher.predictFling(child, velocityY, flingPredictor);
+        }
+        return false;
+    }
+
+    @Override
+    public void onStopNestedScroll(@NonNull CoordinatorLayout coordinatorLayout, @NonNull V child,
+                                   @NonNull View target, int type) {
+        if (type == ViewCompat.TYPE_NON_TOUCH && offsetDispatcher != null) {
+            // the fling is over, wherever it ended
+            offsetDispatcher.endFlingPrediction(child);
+        }
+    }
+
+    @Override
+    public boolean onLayoutChild(@NonNull CoordinatorLayout parent, @NonNull V child, int layoutDirection) {
+        parent.onLayoutChild(child, layoutDirection);
+        onChildLaidOut(parent, child);
+        return true;
+    }
+
+    /**
+     * To be called right after the view has been laid out, for behaviors that lay out the view
+     * themselves and delegate the rest to this one.
+     */
+    void onChildLaidOut(@NonNull CoordinatorLayout parent, @NonNull View child) {
+        if (restoredState != null) {
+            // before the first draw after restoring, so that the view does not show up in the wrong place first
+            applyRestoredState(parent, child, restoredState);
+            restoredState = null;
+        }
+        if (offsetDispatcher != null) {
+            // in the same layout pass, instead of with the next offset event
+            offsetDispatcher.onViewLaidOut(child);
+        }
+    }
+
+    @Override
+    public Parcelable onSaveInstanceState(@NonNull CoordinatorLayout parent, @NonNull V child) {
+        SavedState state = new SavedState(super.onSaveInstanceState(parent, child));
+        TranslationRegistry registry = TranslationRegistry.of(child);
+        state.appBarTranslationYByThis = registry.getComponent(TranslationRegistry.COMPONENT_APP_BAR).getValue();
+        state.obstructionTranslationYByThis = registry.getComponent(TranslationRegistry.COMPONENT_OBSTRUCTIONS).getValue();
+        return state;
+    }
+
+    @Override
+    public void onRestoreInstanceState(@NonNull CoordinatorLayout parent, @NonNull V child, @NonNull Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(parent, child, state);
+            return;
+        }
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(parent, child, savedState.getSuperState());
+        restoredState = savedState;
+    }
+
+    private void applyRestoredState(CoordinatorLayout parent, View view, SavedState state) {
+        // the next offset event continues from there; while not bound, it gets taken along once the view is
+        getTranslationRegistry(view).getComponent(TranslationRegistry.COMPONENT_APP_BAR)
+                .setValue(state.appBarTranslationYByThis);
+        // Obstructions don't necessarily survive, and their dependent view callbacks only come after this
+        // layout. Keep the part for obstructions only if an obstruction is there to keep it for; otherwise
+        // drop it now, instead of showing the view lifted in the first frame and moving it down after.
+        List<View> dependencies = parent.getDependencies(view);
+        for (int i = 0, count = dependencies.size(); i < count; i++) {
+            View dependency = dependencies.get(i);
+            ObstructionProvider provider = getObstructionProvider(dependency);
+            if (provider != null) {
+                trackObstruction(parent, view, dependency, provider);
+            }
+        }
+        boolean obstructed = obstructionSolver.getMaxHeight() > 0;
+        obstructionTranslationYSpring.snapTo(obstructed ? state.obstructionTranslationYByThis : 0.0f);
+        applyObstructionTranslationY(obstructionTranslation);
+        if (obstructed) {
+            // the obstruction may have a different height now
+            updateTranslationForObstructions(view);
+        }
+    }
+
+    @Override
+    public void onDetachedFromLayoutParams() {
+        super.onDetachedFromLayoutParams();
+        // this behavior is no longer the one of the view
+        if (translationRegistry != null) {
+            View view = translationRegistry.getView();
+            unbind(view, false);
+            view.removeOnAttachStateChangeListener(attachStateListener);
+            if (obstructionSpringAnimation != null) {
+                obstructionSpringAnimation.cancel();
+            }
+            obstructionTranslationYSpring.snapTo(0.0f);
+            obstructionTranslation.setValue(0.0f);
+            translationRegistry = null;
+            obstructionTranslation = null;
+        }
+        obstructionSolver.clear();
+    }
+
+    private void bind(CoordinatorLayout parent, View view, AppBarLayout appBarLayout) {
+        if (translationRegistry == null || translationRegistry.getView() != view) {
+            if (translationRegistry != null) {
+                translationRegistry.getView().removeOnAttachStateChangeListener(attachStateListener);
+            }
+            getTranslationRegistry(view);
+            view.addOnAttachStateChangeListener(attachStateListener);
+        }
+        // all views bound to the same AppBarLayout share one OnOffsetChangedListener
+        offsetDispatcher = OffsetDispatcher.obtain(appBarLayout);
+        offsetDispatcher.adopt(parent, view, displacementCurve);
+        offsetDispatcher.setBottomInset(view, bottomInset);
+        updateDispatcherThresholds();
+        if (qualityGovernor != null) {
+            offsetDispatcher.setQualityGovernor(view, qualityGovernor);
+        }
+        if (metrics != null) {
+            offsetDispatcher.setMetrics(metrics);
+        }
+        if (eventRecorder != null) {
+            offsetDispatcher.setEventRecorder(eventRecorder);
+        }
+    }
+
+    /**
+     * Unbinds the view from its AppBarLayout. Its displacement is either kept, to be taken along by the
+     * next {@link #bind(CoordinatorLayout, View, AppBarLayout)}, or taken back.
+     */
+    private void unbind(View view, boolean keepTranslation) {
+        if (offsetDispatcher != null) {
+            if (keepTranslation) {
+                offsetDispatcher.detach(view);
+            } else {
+                offsetDispatcher.unregister(view);
+            }
+            if (offsetDispatcher.isEmpty()) {
+                // don't leave anything behind on the AppBarLayout
+                offsetDispatcher.release();
+            }
+            offsetDispatcher = null;
+        } else if (!keepTranslation) {
+            TranslationRegistry.of(view).getComponent(TranslationRegistry.COMPONENT_APP_BAR).setValue(0.0f);
+        }
+    }
+
+    @Override
+    public boolean onDependentViewChanged(@NonNull CoordinatorLayout parent, @NonNull V child, @NonNull View dependency) {
+        if (offsetDispatcher != null) {
+            // the CoordinatorLayout may have moved the child without a layout
+            offsetDispatcher.onDependencyChanged(child);
+        }
+        if (dependency instanceof AppBarLayout) {
+            // the shared dispatcher reacts on offset changes; beyond that, nothing to do per dependent view change
+            return true;
+        }
+        ObstructionProvider provider = getObstructionProvider(dependency);
+        if (provider != null) {
+            trackObstruction(parent, child, dependency, provider);
+            updateTranslationForObstructions(child);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void onDependentViewRemoved(@NonNull CoordinatorLayout parent, @NonNull V child, @NonNull View dependency) {
+        if (getObstructionProvider(dependency) != null) {
+            if (offsetDispatcher != null) {
+                offsetDispatcher.onDependencyChanged(child);
+            }
+            obstructionSolver.untrack(dependency);
+            if (eventRecorder != null) {
+                eventRecorder.record(EventRecorder.TYPE_DEPENDENCY_UNTRACKED, child.getId(), dependency.getId(),
+                        obstructionSolver.getMaxHeight());
+            }
+            updateTranslationForObstructions(child);
+        }
+    }
+
+    private void trackObstruction(CoordinatorLayout parent, View view, View dependency, ObstructionProvider provider) {
+        obstructionSolver.track(parent, view, dependency, provider);
+        if (eventRecorder != null) {
+            eventRecorder.record(EventRecorder.TYPE_DEPENDENCY_TRACKED, view.getId(), dependency.getId(),
+                    obstructionSolver.getMaxHeight());
+        }
+    }
+
+    private void updateTranslationForObstructions(View view) {
+        if (!SyncTrace.enabled) {
+            applyObstructions(view);
+            return;
+        }
+        SyncTrace.beginSection(SyncTrace.SECTION_OBSTRUCTIONS);
+        try {
+            applyObstructions(view);
+            SyncTrace.setCounter(SyncTrace.COUNTER_OBSTRUCTIONS, obstructionSolver.getOverlappingCount());
+        } finally {
+            SyncTrace.endSection();
+        }
+    }
+
+    private void applyObstructions(View view) {
+        final SyncMetrics metrics = this.metrics;
+        final long startNanos = metrics != null ? System.nanoTime() : 0L;
+
+        // We want to introduce additional y-translation (with respect to what's already there),
+        // by the current height of the largest obstruction
+        final float targetTransYByThis = -obstructionSolver.getMaxHeight();
+        getTranslationRegistry(view);
+        final TranslationRegistry.Component translation = obstructionTranslation;
+
+        if (obstructionTranslationYSpring.getTarget() == targetTransYByThis) {
+            // We're already at (or currently animating to) the target value, return...
+            if (metrics != null) {
+                metrics.recordObstructionUpdate(startNanos, System.nanoTime());
+            }
+            return;
+        }
+        if (eventRecorder != null) {
+            eventRecorder.record(EventRecorder.TYPE_OBSTRUCTION_TARGET, view.getId(), 0, targetTransYByThis);
+        }
+
+        if (obstructionSpringAnimation != null && obstructionSpringAnimation.running) {
+            // Keep on animating, just towards the new target; the view keeps its current velocity
+            obstructionTranslationYSpring.setTarget(targetTransYByThis);
+            if (metrics != null) {
+                metrics.recordObstructionAnimationInterrupted();
+            }
+        } else if (view.isShown()
+                && Math.abs(targetTransYByThis - translation.getValue()) > (view.getHeight() * 0.667f)) {
+            // If the view will be travelling by more than 2/3 of it's height, let's animate
+            // it instead
+            if (obstructionSpringAnimation == null || obstructionSpringAnimation.translation != translation) {
+                obstructionSpringAnimation = new ObstructionSpringAnimation(translation);
+            }
+            obstructionTranslationYSpring.setTarget(targetTransYByThis);
+            obstructionSpringAnimation.start();
+            if (metrics != null) {
+                metrics.recordObstructionAnimationStarted();
+            }
+        } else {
+            // Now update the translation Y, by the difference between what we want now
+            // and what we had earlier
+            obstructionTranslationYSpring.snapTo(targetTransYByThis);
+            applyObstructionTranslationY(translation);
+        }
+
+        if (metrics != null) {
+            metrics.recordObstructionUpdate(startNanos, System.nanoTime());
+        }
+    }
+
+    private void applyObstructionTranslationY(TranslationRegistry.Component translation) {
+        translation.setValue(obstructionTranslationYSpring.getPosition());
+    }
+
+    /**
+     * Steps the obstruction displacement spring once per animation frame, until it comes to rest.
+     * Frames are scheduled with {@link ViewCompat#postOnAnimation(View, Runnable)}; time is taken
+     * from {@link AnimationUtils#currentAnimationTimeMillis()}, which is the frame time where available.
+     */
+    private final class ObstructionSpringAnimation implements Runnable {
+
+        private final TranslationRegistry.Component translation;
+        private boolean running = false;
+        private long lastFrameMillis;
+
+        ObstructionSpringAnimation(TranslationRegistry.Component translation) {
+            this.translation = translation;
+        }
+
+        void start() {
+            if (running) {
+                return;
+            }
+            final boolean tracing = SyncTrace.enabled;
+            if (tracing) {
+                SyncTrace.beginSection(SyncTrace.SECTION_ANIMATION_START);
+            }
+            try {
+                running = true;
+                lastFrameMillis = AnimationUtils.currentAnimationTimeMillis();
+                ViewCompat.postOnAnimation(translation.getRegistry().getView(), this);
+            } finally {
+                if (tracing) {
+                    SyncTrace.endSection();
+                }
+            }
+        }
+
+        void cancel() {
+            if (!running) {
+                return;
+            }
+            final boolean tracing = SyncTrace.enabled;
+            if (tracing) {
+                SyncTrace.beginSection(SyncTrace.SECTION_ANIMATION_CANCEL);
+            }
+            try {
+                running = false;
+                View view = translation.getRegistry().getView();
+                view.removeCallbacks(this);
+                if (eventRecorder != null) {
+                    eventRecorder.record(EventRecorder.TYPE_OBSTRUCTION_SPRING_CANCELLED, view.getId(), 0,
+                            obstructionTranslationYSpring.getPosition());
+                }
+            } finally {
+                if (tracing) {
+                    SyncTrace.endSection();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            long frameMillis = AnimationUtils.currentAnimationTimeMillis();
+            long deltaMillis = Math.min(frameMillis - lastFrameMillis, OBSTRUCTION_SPRING_MAX_FRAME_MILLIS);
+            lastFrameMillis = frameMillis;
+
+            obstructionTranslationYSpring.step(deltaMillis / 1000f);
+            applyObstructionTranslationY(translation);
+
+            if (obstructionTranslationYSpring.isAtRest()) {
+                running = false;
+            } else {
+                ViewCompat.postOnAnimation(translation.getRegistry().getView(), this);
+            }
+        }
+    }
+
+    /**
+     * The translation parts coming from this behavior, so that the view can be put back into place
+     * before the first frame after a configuration change or process death.
+     */
+    protected static class SavedState extends AbsSavedState {
+        float appBarTranslationYByThis;
+        float obstructionTranslationYByThis;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        SavedState(Parcel source, ClassLoader loader) {
+            super(source, loader);
+            appBarTranslationYByThis = source.readFloat();
+            obstructionTranslationYByThis = source.readFloat();
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            super.writeToParcel(dest, flags);
+            dest.writeFloat(appBarTranslationYByThis);
+            dest.writeFloat(obstructionTranslationYByThis);
+        }
+
+        public static final Creator<SavedState> CREATOR = new ClassLoaderCreator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel source, ClassLoader loader) {
+                return new SavedState(source, loader);
+            }
+
+            @Override
+            public SavedState createFromParcel(Parcel source) {
+                return new SavedState(source, null);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+}
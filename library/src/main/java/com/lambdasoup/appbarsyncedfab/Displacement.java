@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+/**
+ * Displacement math of the library, free of any Android dependency. All inputs and outputs are
+ * primitives, so the per-frame path neither allocates nor touches a View; this is also what allows
+ * it to be benchmarked on a plain JVM.
+ * <p/>
+ * Translations are always handled relative to what other sources of translation on the view are
+ * doing: each source keeps track of the part of translationY it is responsible for ("by this"),
+ * and only ever changes the total translation by the difference of its own part.
+ */
+final class Displacement {
+
+    private Displacement() {
+    }
+
+    /**
+     * How far along the AppBarLayout is in collapsing:
+     * 0.0f if fully expanded (no displacement), 1.0f if totally collapsed (full displacement).
+     * An AppBarLayout that cannot scroll at all counts as expanded.
+     */
+    static float collapseFraction(int verticalOffset, int totalScrollRange) {
+        if (totalScrollRange <= 0) {
+            return 0.0f;
+        }
+        return -verticalOffset / (float) totalScrollRange;
+    }
+
+    /**
+     * Total length to displace the view by for a full collapse, measured from the position it
+     * would have without the translation coming from this source, such that its top ends up at
+     * parentBottom.
+     */
+    static float fullDisplacement(int parentBottom, int top, float translationY, float translationYByThis) {
+        // top position, accounting for translation not coming from this source
+        float topUntranslatedFromThis = top + translationY - translationYByThis;
+        return parentBottom - topUntranslatedFromThis;
+    }
+
+    /**
+     * Part of the translation this source is responsible for, at the given collapse fraction.
+     */
+    static float translationYByThis(float fullDisplacement, float collapseFraction) {
+        return fullDisplacement * collapseFraction;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+/**
+ * Maps the collapse fraction of the AppBarLayout to the fraction of the full displacement of the view,
+ * free of any Android dependency.
+ * <p/>
+ * Curves are sampled once into a lookup table of equidistant samples, and evaluated by linear
+ * interpolation between neighbouring samples; so every curve, no matter how expensive to compute,
+ * costs the same per offset event. The linear curve is a table of two samples.
+ */
+final class DisplacementCurve {
+
+    /**
+     * Number of samples taken from curves that are not piecewise linear by nature.
+     */
+    static final int SAMPLE_COUNT = 65;
+
+    static final DisplacementCurve LINEAR = new DisplacementCurve(new float[]{0.0f, 1.0f});
+
+    private final float[] samples;
+    private final int intervals;
+
+    /**
+     * @param samples values of the curve at 0, 1 / (samples.length - 1), ..., 1; at least two
+     */
+    DisplacementCurve(float[] samples) {
+        if (samples.length < 2) {
+            throw new IllegalArgumentException("need at least two samples, got " + samples.length);
+        }
+        this.samples = samples;
+        this.intervals = samples.length - 1;
+    }
+
+    /**
+     * Accelerating curve; the view starts moving slowly and catches up towards the end of the collapse.
+     */
+    static DisplacementCurve easeIn() {
+        float[] samples = new float[SAMPLE_COUNT];
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            float t = i / (float) (SAMPLE_COUNT - 1);
+            samples[i] = t * t;
+        }
+        return new DisplacementCurve(samples);
+    }
+
+    /**
+     * The view stays in place until the AppBarLayout has collapsed by the given fraction, and then
+     * slides out linearly during the rest of the collapse.
+     */
+    static DisplacementCurve delayed(float startFraction) {
+        float start = Math.max(0.0f, Math.min(1.0f, startFraction));
+        float[] samples = new float[SAMPLE_COUNT];
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            float t = i / (float) (SAMPLE_COUNT - 1);
+            samples[i] = start >= 1.0f ? (t >= 1.0f ? 1.0f : 0.0f) : Math.max(0.0f, (t - start) / (1.0f - start));
+        }
+        return new DisplacementCurve(samples);
+    }
+
+    /**
+     * Displacement fraction for the given collapse fraction; collapse fractions outside of [0, 1]
+     * are clamped.
+     */
+    float map(float collapseFraction) {
+        if (collapseFraction <= 0.0f) {
+            return samples[0];
+        }
+        if (collapseFraction >= 1.0f) {
+            return samples[intervals];
+        }
+        float position = collapseFraction * intervals;
+        int index = (int) position;
+        float low = samples[index];
+        return low + (samples[index + 1] - low) * (position - index);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+/**
+ * Critically damped spring moving a displacement towards a target, free of any Android dependency.
+ * <p/>
+ * The target can be changed at any time, also while moving; position and velocity are kept, so the
+ * motion just bends towards the new target instead of jumping or restarting. Steps use the closed
+ * form solution of the spring equation, so they are exact for any time delta, and a sequence of
+ * steps is fully deterministic for a given sequence of time deltas. Stepping does not allocate.
+ */
+final class DisplacementSpring {
+
+    // below these, the spring counts as settled and snaps to the target
+    private static final float REST_DISTANCE = 0.5f;
+    private static final float REST_VELOCITY = 5.0f;
+
+    // angular frequency in 1/s; critically damped, the spring settles within about 6.6 / omega seconds
+    private final float omega;
+
+    private float position;
+    private float velocity;
+    private float target;
+
+    /**
+     * @param omega angular frequency in 1/s, determines how fast the spring settles
+     */
+    DisplacementSpring(float omega) {
+        this.omega = omega;
+    }
+
+    float getPosition() {
+        return position;
+    }
+
+    float getVelocity() {
+        return velocity;
+    }
+
+    float getTarget() {
+        return target;
+    }
+
+    /**
+     * Changes the target, keeping the current position and velocity.
+     */
+    void setTarget(float target) {
+        this.target = target;
+    }
+
+    /**
+     * Moves to the target immediately, without any remaining velocity.
+     */
+    void snapTo(float target) {
+        this.target = target;
+        this.position = target;
+        this.velocity = 0.0f;
+    }
+
+    boolean isAtRest() {
+        return position == target && velocity == 0.0f;
+    }
+
+    /**
+     * Advances the spring by the given time, in seconds. Snaps to the target once close enough.
+     */
+    void step(float deltaSeconds) {
+        if (isAtRest() || deltaSeconds <= 0.0f) {
+            return;
+        }
+        // x(t) = (x0 + (v0 + omega * x0) * t) * e^(-omega * t), relative to target
+        float x0 = position - target;
+        float v0 = velocity;
+        float c = v0 + omega * x0;
+        float decay = (float) Math.exp(-omega * deltaSeconds);
+
+        float x = (x0 + c * deltaSeconds) * decay;
+        velocity = (v0 - omega * c * deltaSeconds) * decay;
+        position = target + x;
+
+        if (Math.abs(x) < REST_DISTANCE && Math.abs(velocity) < REST_VELOCITY) {
+            snapTo(target);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Opt-in recorder of the events that move synced views - offset changes of the AppBarLayout,
+ * obstructions coming and going, obstruction displacement updates, translation writes, animations
+ * and their replacements and cancellations - for diagnosing jumps reported from the field. Set the
+ * same instance on all behaviors (and offsetters) of a screen, with
+ * {@link AppBarSyncedBehavior#setEventRecorder(EventRecorder)} and
+ * {@link ViewOffsetter#setEventRecorder(EventRecorder)}, and {@link #writeTo(OutputStream) dump} it
+ * when something went wrong.
+ * <p/>
+ * Events are kept in a ring buffer of preallocated primitive arrays; recording costs a few array
+ * stores and no allocation, and once the buffer is full, the oldest events get overwritten. Only ever
+ * touched from the main thread.
+ * <p/>
+ * Each event has a time (from {@link System#nanoTime()}), a type, the id of the view it concerns,
+ * an int argument and a float value; see the TYPE_* constants for their meaning. The dump is a
+ * compact big-endian binary format: the magic number {@link #MAGIC}, the format version, the number
+ * of events, then the events from oldest to newest, as long time, byte type, int view id, int argument
+ * and float value, 21 bytes each. {@link #readFrom(InputStream)} reads it back.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class EventRecorder {
+
+    public static final int MAGIC = 0x41425346;
+    public static final int VERSION = 1;
+
+    /**
+     * Offset change of the AppBarLayout with the view id; argument is the vertical offset, value the
+     * total scroll range.
+     */
+    public static final byte TYPE_OFFSET_CHANGED = 1;
+    /**
+     * Translation of the view written; value is the new translationY.
+     */
+    public static final byte TYPE_TRANSLATION_WRITTEN = 2;
+    /**
+     * Translation of the view changed from outside of this library, and picked up on layout; value is
+     * the translationY found.
+     */
+    public static final byte TYPE_EXTERNAL_TRANSLATION = 3;
+    /**
+     * Animation of the view started; argument is the duration in milliseconds, value the target translationY.
+     */
+    public static final byte TYPE_ANIMATION_STARTED = 4;
+    /**
+     * Running animation of the view replaced by a new one, which continues from the current position;
+     * value is the translationY at that point.
+     */
+    public static final byte TYPE_ANIMATION_REPLACED = 5;
+    /**
+     * Animation of the view ended; value is the translationY it ended at.
+     */
+    public static final byte TYPE_ANIMATION_ENDED = 6;
+    /**
+     * Displacement of the view for obstructions changed its target; value is the new target, as part of
+     * the translation.
+     */
+    public static final byte TYPE_OBSTRUCTION_TARGET = 7;
+    /**
+     * Fling of the view predicted; argument is the duration in milliseconds, value the predicted
+     * collapse fraction.
+     */
+    public static final byte TYPE_FLING_PREDICTED = 8;
+    /**
+     * Quality level of the views of the AppBarLayout with the view id changed; argument is the new level.
+     */
+    public static final byte TYPE_QUALITY_LEVEL = 9;
+    /**
+     * Spring animation of the displacement of the view for obstructions cancelled before coming to rest;
+     * value is the displacement it was cancelled at, as part of the translation.
+     */
+    public static final byte TYPE_OBSTRUCTION_SPRING_CANCELLED = 10;
+    /**
+     * Obstruction of the view tracked, on its first appearance or a change of it; argument is the id of the
+     * obstruction, value the height of the largest overlapping obstruction after.
+     */
+    public static final byte TYPE_DEPENDENCY_TRACKED = 11;
+    /**
+     * Obstruction of the view no longer tracked, after it was removed; argument is the id of the
+     * obstruction, value the height of the largest overlapping obstruction after.
+     */
+    public static final byte TYPE_DEPENDENCY_UNTRACKED = 12;
+
+    private final long[] timesNanos;
+    private final byte[] types;
+    private final int[] viewIds;
+    private final int[] arguments;
+    private final float[] values;
+    // index the next event goes to
+    private int next = 0;
+    private int size = 0;
+
+    /**
+     * @param capacity number of events kept; older ones get overwritten
+     */
+    public EventRecorder(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive, got " + capacity);
+        }
+        timesNanos = new long[capacity];
+        types = new byte[capacity];
+        viewIds = new int[capacity];
+        arguments = new int[capacity];
+        values = new float[capacity];
+    }
+
+    void record(byte type, int viewId, int argument, float value) {
+        record(System.nanoTime(), type, viewId, argument, value);
+    }
+
+    private void record(long timeNanos, byte type, int viewId, int argument, float value) {
+        int index = next;
+        timesNanos[index] = timeNanos;
+        types[index] = type;
+        viewIds[index] = viewId;
+        arguments[index] = argument;
+        values[index] = value;
+        next = index + 1 == types.length ? 0 : index + 1;
+        if (size < types.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Number of events recorded, up to the capacity.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Forgets all recorded events.
+     */
+    public void clear() {
+        next = 0;
+        size = 0;
+    }
+
+    // index in the arrays of the i-th event, oldest first
+    private int indexOf(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("event " + i + " of " + size);
+        }
+        int index = next - size + i;
+        return index < 0 ? index + types.length : index;
+    }
+
+    public long getTimeNanos(int i) {
+        return timesNanos[indexOf(i)];
+    }
+
+    public byte getType(int i) {
+        return types[indexOf(i)];
+    }
+
+    public int getViewId(int i) {
+        return viewIds[indexOf(i)];
+    }
+
+    public int getArgument(int i) {
+        return arguments[indexOf(i)];
+    }
+
+    public float getValue(int i) {
+        return values[indexOf(i)];
+    }
+
+    /**
+     * Writes all recorded events, oldest first, in the format described above. Does not close the stream.
+     */
+    public void writeTo(@NonNull OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            int index = indexOf(i);
+            data.writeLong(timesNanos[index]);
+            data.writeByte(types[index]);
+            data.writeInt(viewIds[index]);
+            data.writeInt(arguments[index]);
+            data.writeFloat(values[index]);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads events written by {@link #writeTo(OutputStream)}, into a recorder just big enough for them,
+     * for inspection or replay. Does not close the stream.
+     */
+    @NonNull
+    public static EventRecorder readFrom(@NonNull InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("not an event recording");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported event recording version " + version);
+        }
+        int count = data.readInt();
+        if (count < 0) {
+            throw new IOException("invalid event count " + count);
+        }
+        EventRecorder recorder = new EventRecorder(Math.max(count, 1));
+        for (int i = 0; i < count; i++) {
+            long timeNanos = data.readLong();
+            byte type = data.readByte();
+            int viewId = data.readInt();
+            int argument = data.readInt();
+            float value = data.readFloat();
+            recorder.record(timeNanos, type, viewId, argument, value);
+        }
+        return recorder;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+/**
+ * Predicts how far and how long a fling travels, from its initial velocity, and how far it has come
+ * at any time on the way, with the same spline model that {@link android.widget.OverScroller} uses
+ * for the flings of scrolling views.
+ * <p/>
+ * Kept free of Android dependencies; the physical coefficient depending on the screen density is
+ * passed in.
+ */
+final class FlingPredictor {
+
+    // constants of the OverScroller spline
+    private static final float DECELERATION_RATE = (float) (Math.log(0.78) / Math.log(0.9));
+    private static final float INFLEXION = 0.35f;
+    private static final float GRAVITY_EARTH = 9.80665f;
+    private static final float INCHES_PER_METER = 39.37f;
+    private static final float START_TENSION = 0.5f;
+    private static final float END_TENSION = 1.0f;
+    private static final float P1 = START_TENSION * INFLEXION;
+    private static final float P2 = 1.0f - END_TENSION * (1.0f - INFLEXION);
+
+    // fraction of the distance covered at evenly spaced fractions of the duration
+    private static final int NB_SAMPLES = 100;
+    private static final float[] SPLINE_POSITION = new float[NB_SAMPLES + 1];
+
+    static {
+        // same sampling as OverScroller, so that predictions match the flings of scrolling views
+        float xMin = 0.0f;
+        for (int i = 0; i < NB_SAMPLES; i++) {
+            final float alpha = (float) i / NB_SAMPLES;
+            float xMax = 1.0f;
+            float x, tx, coef;
+            while (true) {
+                x = xMin + (xMax - xMin) / 2.0f;
+                coef = 3.0f * x * (1.0f - x);
+                tx = coef * ((1.0f - x) * P1 + x * P2) + x * x * x;
+                if (Math.abs(tx - alpha) < 1E-5) {
+                    break;
+                }
+                if (tx > alpha) {
+                    xMax = x;
+                } else {
+                    xMin = x;
+                }
+            }
+            SPLINE_POSITION[i] = coef * ((1.0f - x) * START_TENSION + x) + x * x * x;
+        }
+        SPLINE_POSITION[NB_SAMPLES] = 1.0f;
+    }
+
+    // friction times the deceleration at the density of the screen
+    private final float deceleration;
+
+    /**
+     * @param scrollFriction as in {@link android.view.ViewConfiguration#getScrollFriction()}
+     * @param density        as in {@link android.util.DisplayMetrics#density}
+     */
+    FlingPredictor(float scrollFriction, float density) {
+        float ppi = density * 160.0f;
+        this.deceleration = scrollFriction * GRAVITY_EARTH * INCHES_PER_METER * ppi * 0.84f;
+    }
+
+    /**
+     * Distance in pixels a fling with the given velocity in pixels per second travels, with the
+     * sign of the velocity.
+     */
+    float getDistance(float velocity) {
+        if (velocity == 0.0f) {
+            return 0.0f;
+        }
+        double l = splineDeceleration(velocity);
+        double distance = deceleration * Math.exp(DECELERATION_RATE / (DECELERATION_RATE - 1.0) * l);
+        return (float) Math.copySign(distance, velocity);
+    }
+
+    /**
+     * Time in milliseconds until a fling with the given velocity in pixels per second comes to rest.
+     */
+    long getDurationMillis(float velocity) {
+        if (velocity == 0.0f) {
+            return 0L;
+        }
+        return (long) (1000.0 * Math.exp(splineDeceleration(velocity) / (DECELERATION_RATE - 1.0)));
+    }
+
+    private double splineDeceleration(float velocity) {
+        return Math.log(INFLEXION * Math.abs(velocity) / deceleration);
+    }
+
+    /**
+     * Fraction of its distance a fling has covered after the given fraction of its duration.
+     */
+    static float getDistanceFraction(float timeFraction) {
+        if (timeFraction <= 0.0f) {
+            return 0.0f;
+        }
+        if (timeFraction >= 1.0f) {
+            return 1.0f;
+        }
+        float t = NB_SAMPLES * timeFraction;
+        int index = (int) t;
+        float dInf = SPLINE_POSITION[index];
+        float dSup = SPLINE_POSITION[index + 1];
+        return dInf + (t - index) * (dSup - dInf);
+    }
+
+    /**
+     * Fraction of its duration after which a fling has covered the given fraction of its distance;
+     * the inverse of {@link #getDistanceFraction(float)}.
+     */
+    static float getTimeFraction(float distanceFraction) {
+        if (distanceFraction <= 0.0f) {
+            return 0.0f;
+        }
+        if (distanceFraction >= 1.0f) {
+            return 1.0f;
+        }
+        // positions are increasing: find the sample interval containing the distance fraction
+        int low = 0;
+        int high = NB_SAMPLES;
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            if (SPLINE_POSITION[mid] <= distanceFraction) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        float dInf = SPLINE_POSITION[low];
+        float dSup = SPLINE_POSITION[high];
+        return (low + (distanceFraction - dInf) / (dSup - dInf)) / NB_SAMPLES;
+    }
+}
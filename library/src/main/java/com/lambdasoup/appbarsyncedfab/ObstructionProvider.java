@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.coordinatorlayout.widget.CoordinatorLayout;
+
+/**
+ * Recognizes one kind of view that can obstruct the bottom of a CoordinatorLayout, and tells how much
+ * of it does. Views synced by an {@link AppBarSyncedBehavior} move up out of the way of all
+ * obstructions recognized by its providers that overlap them. See {@link Obstructions} for the
+ * common kinds.
+ */
+public interface ObstructionProvider {
+
+    /**
+     * Whether the given sibling of the synced view is an obstruction of this kind. Called when
+     * dependencies get determined, not per frame.
+     */
+    boolean isObstruction(@NonNull View dependency);
+
+    /**
+     * How far the synced view has to move up to get out of the way of the obstruction, given that they
+     * overlap; values below 0 count as 0. Called whenever the obstruction changes, for example on
+     * every frame of its animation, so should be cheap.
+     */
+    float getObstructionHeight(@NonNull CoordinatorLayout parent, @NonNull View obstruction);
+}
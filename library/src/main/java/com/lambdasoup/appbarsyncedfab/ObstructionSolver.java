@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import android.view.View;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+import androidx.coordinatorlayout.widget.CoordinatorLayout;
+
+/**
+ * Keeps track of the views obstructing the bottom of the CoordinatorLayout that a view depends on -
+ * snackbars, bottom sheets, banners, anything an {@link ObstructionProvider} recognizes - and finds
+ * how far the view has to move up to get out of the way of all of them.
+ * <p/>
+ * Obstructions get tracked when they first show up as changed dependency and untracked when they are
+ * removed. Most of them slide in and out by translation, which does not change their layout bounds;
+ * so whether an obstruction overlaps the view is cached, and only checked again when the layout bounds
+ * of the obstruction or of the view have changed.
+ * <p/>
+ * The overlapping obstructions are kept sorted by their height, largest first. A change of one
+ * obstruction moves only its own entry, so the height to get out of the way of all of them is at hand
+ * without a pass over all of them, however many there are.
+ */
+final class ObstructionSolver {
+
+    private static final int INITIAL_CAPACITY = 2;
+
+    private View[] obstructions = new View[INITIAL_CAPACITY];
+    private ObstructionProvider[] providers = new ObstructionProvider[INITIAL_CAPACITY];
+    // layout bounds for which overlapping has been determined
+    private int[] bounds = new int[INITIAL_CAPACITY * 4];
+    private boolean[] overlapping = new boolean[INITIAL_CAPACITY];
+    private float[] heights = new float[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // indices of the overlapping obstructions, sorted by height, largest first
+    private int[] order = new int[INITIAL_CAPACITY];
+    private int orderSize = 0;
+
+    // layout bounds of the view for which overlapping has been determined
+    private int viewLeft;
+    private int viewTop;
+    private int viewRight;
+    private int viewBottom;
+
+    /**
+     * Starts tracking the obstruction, or updates its height and whether it overlaps the view, if it is
+     * already tracked.
+     */
+    void track(@NonNull CoordinatorLayout parent, @NonNull View view, @NonNull View obstruction,
+               @NonNull ObstructionProvider provider) {
+        if (view.getLeft() != viewLeft || view.getTop() != viewTop
+                || view.getRight() != viewRight || view.getBottom() != viewBottom) {
+            viewLeft = view.getLeft();
+            viewTop = view.getTop();
+            viewRight = view.getRight();
+            viewBottom = view.getBottom();
+            // all cached results are stale
+            for (int i = 0; i < size; i++) {
+                updateOverlapping(i, parent, view);
+            }
+        }
+
+        int index = indexOf(obstruction);
+        if (index < 0) {
+            if (size == obstructions.length) {
+                int capacity = size * 2;
+                obstructions = Arrays.copyOf(obstructions, capacity);
+                providers = Arrays.copyOf(providers, capacity);
+                bounds = Arrays.copyOf(bounds, capacity * 4);
+                overlapping = Arrays.copyOf(overlapping, capacity);
+                heights = Arrays.copyOf(heights, capacity);
+                order = Arrays.copyOf(order, capacity);
+            }
+            index = size++;
+            obstructions[index] = obstruction;
+            providers[index] = provider;
+            overlapping[index] = false;
+            updateOverlapping(index, parent, view);
+        } else if (obstruction.getLeft() != bounds[index * 4] || obstruction.getTop() != bounds[index * 4 + 1]
+                || obstruction.getRight() != bounds[index * 4 + 2] || obstruction.getBottom() != bounds[index * 4 + 3]) {
+            updateOverlapping(index, parent, view);
+        }
+
+        if (overlapping[index]) {
+            float height = obstructionHeight(index, parent);
+            if (height != heights[index]) {
+                removeFromOrder(index);
+                heights[index] = height;
+                insertIntoOrder(index);
+            }
+        }
+    }
+
+    /**
+     * Stops tracking the obstruction. Does nothing if it is not tracked.
+     */
+    void untrack(@NonNull View obstruction) {
+        int index = indexOf(obstruction);
+        if (index < 0) {
+            return;
+        }
+        if (overlapping[index]) {
+            removeFromOrder(index);
+        }
+        int last = size - 1;
+        obstructions[index] = obstructions[last];
+        providers[index] = providers[last];
+        System.arraycopy(bounds, last * 4, bounds, index * 4, 4);
+        overlapping[index] = overlapping[last];
+        heights[index] = heights[last];
+        obstructions[last] = null;
+        providers[last] = null;
+        size = last;
+        if (index != last) {
+            // the moved obstruction keeps its place in the order, under its new index
+            for (int i = 0; i < orderSize; i++) {
+                if (order[i] == last) {
+                    order[i] = index;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops tracking all obstructions.
+     */
+    void clear() {
+        Arrays.fill(obstructions, 0, size, null);
+        Arrays.fill(providers, 0, size, null);
+        size = 0;
+        orderSize = 0;
+    }
+
+    /**
+     * returns how far the view has to move up to get out of the way of all tracked obstructions
+     * overlapping it; 0 if there are none
+     */
+    float getMaxHeight() {
+        return orderSize == 0 ? 0.0f : heights[order[0]];
+    }
+
+    /**
+     * returns the number of tracked obstructions overlapping the view
+     */
+    int getOverlappingCount() {
+        return orderSize;
+    }
+
+    private float obstructionHeight(int index, CoordinatorLayout parent) {
+        final boolean tracing = SyncTrace.enabled;
+        if (tracing) {
+            SyncTrace.beginSection(SyncTrace.SECTION_OBSTRUCTION_HEIGHT);
+        }
+        try {
+            return Math.max(0.0f, providers[index].getObstructionHeight(parent, obstructions[index]));
+        } finally {
+            if (tracing) {
+                SyncTrace.endSection();
+            }
+        }
+    }
+
+    private void updateOverlapping(int index, CoordinatorLayout parent, View view) {
+        View obstruction = obstructions[index];
+        bounds[index * 4] = obstruction.getLeft();
+        bounds[index * 4 + 1] = obstruction.getTop();
+        bounds[index * 4 + 2] = obstruction.getRight();
+        bounds[index * 4 + 3] = obstruction.getBottom();
+        boolean wasOverlapping = overlapping[index];
+        overlapping[index] = parent.doViewsOverlap(view, obstruction);
+        if (wasOverlapping && !overlapping[index]) {
+            removeFromOrder(index);
+        } else if (!wasOverlapping && overlapping[index]) {
+            heights[index] = obstructionHeight(index, parent);
+            insertIntoOrder(index);
+        }
+    }
+
+    private void insertIntoOrder(int index) {
+        float height = heights[index];
+        int position = 0;
+        while (position < orderSize && heights[order[position]] >= height) {
+            position++;
+        }
+        System.arraycopy(order, position, order, position + 1, orderSize - position);
+        order[position] = index;
+        orderSize++;
+    }
+
+    private void removeFromOrder(int index) {
+        for (int position = 0; position < orderSize; position++) {
+            if (order[position] == index) {
+                System.arraycopy(order, position + 1, order, position, orderSize - position - 1);
+                orderSize--;
+                return;
+            }
+        }
+    }
+
+    private int indexOf(View obstruction) {
+        for (int i = 0; i < size; i++) {
+            if (obstructions[i] == obstruction) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.google.android.material.bottomsheet.BottomSheetBehavior;
+import com.google.android.material.snackbar.Snackbar;
+
+import androidx.annotation.NonNull;
+import androidx.coordinatorlayout.widget.CoordinatorLayout;
+
+/**
+ * {@link ObstructionProvider}s for the common kinds of views covering the bottom of a CoordinatorLayout.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Obstructions {
+
+    /**
+     * Snackbars, by the visible part of their height while they slide in and out.
+     */
+    public static final ObstructionProvider SNACKBAR = new ObstructionProvider() {
+        @Override
+        public boolean isObstruction(@NonNull View dependency) {
+            return dependency instanceof Snackbar.SnackbarLayout;
+        }
+
+        @Override
+        public float getObstructionHeight(@NonNull CoordinatorLayout parent, @NonNull View obstruction) {
+            return obstruction.getHeight() - obstruction.getTranslationY();
+        }
+    };
+
+    /**
+     * Views with a {@link BottomSheetBehavior}, by the part of the parent they cover at their current state.
+     */
+    public static final ObstructionProvider BOTTOM_SHEET = new ObstructionProvider() {
+        @Override
+        public boolean isObstruction(@NonNull View dependency) {
+            ViewGroup.LayoutParams lp = dependency.getLayoutParams();
+            return lp instanceof CoordinatorLayout.LayoutParams
+                    && ((CoordinatorLayout.LayoutParams) lp).getBehavior() instanceof BottomSheetBehavior;
+        }
+
+        @Override
+        public float getObstructionHeight(@NonNull CoordinatorLayout parent, @NonNull View obstruction) {
+            return bottomOf(parent) - obstruction.getTop() - obstruction.getTranslationY();
+        }
+    };
+
+    private Obstructions() {
+    }
+
+    /**
+     * Views of the given type that are aligned to the bottom of the parent and slide in by translation
+     * or layout - in-app banners, custom toasts and the like - by the part of the parent they cover.
+     */
+    @NonNull
+    public static ObstructionProvider bottomAligned(@NonNull final Class<? extends View> type) {
+        return new ObstructionProvider() {
+            @Override
+            public boolean isObstruction(@NonNull View dependency) {
+                return type.isInstance(dependency);
+            }
+
+            @Override
+            public float getObstructionHeight(@NonNull CoordinatorLayout parent, @NonNull View obstruction) {
+                return bottomOf(parent) - obstruction.getTop() - obstruction.getTranslationY();
+            }
+        };
+    }
+
+    // bottom of the parent in the coordinates of its children
+    private static int bottomOf(CoordinatorLayout parent) {
+        return parent.getHeight() - parent.getPaddingBottom();
+    }
+}
@@ -0,0 +1,825 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.animation.Interpolator;
+
+import com.google.android.material.appbar.AppBarLayout;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.coordinatorlayout.widget.CoordinatorLayout;
+
+/**
+ * The single {@link com.google.android.material.appbar.AppBarLayout.OnOffsetChangedListener} that
+ * gets registered with an AppBarLayout, displacing all views bound to it in one pass per offset
+ * event. Computes the same displacement as {@link FabOffsetter}, but the collapse fraction only once
+ * per event, no matter how many views are bound.
+ * <p/>
+ * State of the bound views is kept in parallel arrays, indexed by slot; registering appends a slot,
+ * unregistering moves the last slot into the freed one. The displacement is the
+ * {@link TranslationRegistry#COMPONENT_APP_BAR} component of the translation of each view. Released
+ * dispatchers stay with their AppBarLayout, arrays and all, so that pages coming back with the same
+ * AppBarLayout do not cost new ones. Views moving between AppBarLayouts take their displacement along, and get animated
+ * from there to the collapse of the new one.
+ * <p/>
+ * Views can also be bound in threshold mode: instead of following the collapse continuously, they
+ * are hidden by a single animation when the collapse fraction reaches the hide threshold, and shown
+ * again when it drops to the show threshold. The gap between the thresholds is the hysteresis that
+ * keeps the view from bouncing when the AppBarLayout hovers around a threshold.
+ * <p/>
+ * Views in continuous mode can also follow a fling by a single animation: when a fling starts, the
+ * collapse fraction it will settle at gets predicted, and the view animated to the matching
+ * displacement right away. While the offset events of the fling stay on the way to the prediction,
+ * they are not written; per-event tracking takes over again as soon as they drift off, and when the
+ * fling ends.
+ * <p/>
+ * Views can be governed by a {@link QualityGovernor}: while the AppBarLayout moves, frame times are
+ * fed to it from {@link Choreographer} frame callbacks, and governed views follow only every other
+ * offset event, or switch to threshold mode, while it says so. Frame callbacks are only posted while
+ * offset events keep coming in; an idle AppBarLayout costs nothing.
+ * <p/>
+ * Work that has no visible effect is skipped: views that are gone (for example after
+ * {@link com.google.android.material.floatingactionbutton.FloatingActionButton#hide()}) are not
+ * touched at all, until they get laid out again and catch up in one step. Changes of less than
+ * half a pixel, and changes of views that stay below the bottom of their parent, are not written.
+ * <p/>
+ * The total scroll range of the AppBarLayout only changes on layout, so it is cached and refreshed
+ * from layout change callbacks, instead of being computed on every offset event. Changes to the
+ * children of the AppBarLayout result in a relayout as well, and so are covered by this. The same
+ * goes for the tops of the views, the bottoms of their parents and whether the views are gone: they
+ * are refreshed when the view or its parent gets laid out, and when a dependency of the view changes.
+ * Views moved by offsetTopAndBottom without a layout, like the CoordinatorLayout does for views
+ * dodging inset edges, are picked up by the next such callback; the AppBarLayout is a dependency, so
+ * that is the pre-draw of the frame it moves in at the latest. The bottom insets of the views are set
+ * once per insets dispatch, and taken into account right away; the keyboard coming and going does not
+ * have to wait for the relayout it causes.
+ */
+final class OffsetDispatcher implements AppBarLayout.OnOffsetChangedListener, View.OnLayoutChangeListener {
+
+    private static final int INITIAL_CAPACITY = 2;
+
+    // translation changes below this many pixels are not worth a write
+    private static final float MIN_VISIBLE_TRANSLATION_CHANGE = 0.5f;
+
+    // how far the collapse fraction may leave the predicted way of a fling before tracking takes over
+    private static final float MAX_PREDICTION_DRIFT = 0.1f;
+    // follows the spline of the last predicted fling; the fling of the AppBarLayout is the same for all views
+    private final FlingInterpolator flingInterpolator = new FlingInterpolator();
+
+    private AppBarLayout appBarLayout;
+    private int totalScrollRange;
+
+    private View[] parents = new View[INITIAL_CAPACITY];
+    // part of the parent at its bottom covered by system bars or the keyboard, as of the last insets dispatch
+    private int[] bottomInsets = new int[INITIAL_CAPACITY];
+    // geometry as of the last layout or dependency change, see refreshGeometry(int)
+    private int[] tops = new int[INITIAL_CAPACITY];
+    private int[] parentBottoms = new int[INITIAL_CAPACITY];
+    private boolean[] gone = new boolean[INITIAL_CAPACITY];
+    private TranslationRegistry.Component[] translations = new TranslationRegistry.Component[INITIAL_CAPACITY];
+    private DisplacementCurve[] curves = new DisplacementCurve[INITIAL_CAPACITY];
+    // threshold mode: configured thresholds are used by governed views in continuous mode, too
+    private boolean[] thresholdModes = new boolean[INITIAL_CAPACITY];
+    private float[] hideThresholds = new float[INITIAL_CAPACITY];
+    private float[] showThresholds = new float[INITIAL_CAPACITY];
+    private boolean[] governed = new boolean[INITIAL_CAPACITY];
+    private boolean[] hidden = new boolean[INITIAL_CAPACITY];
+    private boolean[] dormant = new boolean[INITIAL_CAPACITY];
+    // fling prediction: collapse fractions at the start of the fling and where it is predicted to settle
+    private boolean[] predicting = new boolean[INITIAL_CAPACITY];
+    private float[] predictedFromFractions = new float[INITIAL_CAPACITY];
+    private float[] predictedToFractions = new float[INITIAL_CAPACITY];
+    private int size = 0;
+
+    // collapse fraction as of the last offset event
+    private float collapseFraction = 0.0f;
+
+    private SyncMetrics metrics;
+    private EventRecorder recorder;
+
+    // adaptive quality, for governed views only
+    private QualityGovernor governor;
+    private int governedCount = 0;
+    private int qualityLevel = QualityGovernor.LEVEL_CONTINUOUS;
+    private int offsetEvents = 0;
+    // while handling an offset event to be skipped by views at the reduced level
+    private boolean skippingReduced = false;
+    // created lazily, Choreographer is not available before Jelly Bean
+    private Choreographer.FrameCallback frameCallback;
+    private boolean monitoringFrames = false;
+    private boolean offsetChangedSinceFrame = false;
+
+    private OffsetDispatcher() {
+    }
+
+    /**
+     * Returns the dispatcher of the given AppBarLayout, registering one on first use. A dispatcher
+     * released before is registered again; it is kept as a tag of its AppBarLayout. Main thread only.
+     */
+    @NonNull
+    static OffsetDispatcher obtain(@NonNull AppBarLayout appBarLayout) {
+        Object tag = appBarLayout.getTag(R.id.appbarsyncedfab_offset_dispatcher);
+        OffsetDispatcher dispatcher;
+        if (tag instanceof OffsetDispatcher) {
+            dispatcher = (OffsetDispatcher) tag;
+            if (dispatcher.appBarLayout != null) {
+                return dispatcher;
+            }
+        } else {
+            dispatcher = new OffsetDispatcher();
+            appBarLayout.setTag(R.id.appbarsyncedfab_offset_dispatcher, dispatcher);
+        }
+        dispatcher.appBarLayout = appBarLayout;
+        dispatcher.totalScrollRange = appBarLayout.getTotalScrollRange();
+        // the next offset event comes with the next layout; until then, views bound in the meantime
+        // follow the offset the AppBarLayout is at now
+        dispatcher.collapseFraction = Displacement.collapseFraction(currentOffset(appBarLayout),
+                dispatcher.totalScrollRange);
+        appBarLayout.addOnOffsetChangedListener(dispatcher);
+        appBarLayout.addOnLayoutChangeListener(dispatcher);
+        return dispatcher;
+    }
+
+    /**
+     * Unregisters this dispatcher from its AppBarLayout. Meant for when no views are bound anymore:
+     * the AppBarLayout keeps nothing but the empty dispatcher as a tag, to be obtained again when views
+     * get bound to it again, like when the page it is on comes back. It must not be used until then.
+     */
+    void release() {
+        appBarLayout.removeOnOffsetChangedListener(this);
+        appBarLayout.removeOnLayoutChangeListener(this);
+        appBarLayout = null;
+        metrics = null;
+        recorder = null;
+        stopMonitoringFrames();
+        governor = null;
+        governedCount = 0;
+        qualityLevel = QualityGovernor.LEVEL_CONTINUOUS;
+    }
+
+    @NonNull
+    AppBarLayout getAppBarLayout() {
+        return appBarLayout;
+    }
+
+    // the offset of the AppBarLayout as the next offset event will report it
+    private static int currentOffset(AppBarLayout appBarLayout) {
+        ViewGroup.LayoutParams params = appBarLayout.getLayoutParams();
+        if (params instanceof CoordinatorLayout.LayoutParams) {
+            CoordinatorLayout.Behavior behavior = ((CoordinatorLayout.LayoutParams) params).getBehavior();
+            if (behavior instanceof AppBarLayout.Behavior) {
+                return ((AppBarLayout.Behavior) behavior).getTopAndBottomOffset();
+            }
+        }
+        // AppBarLayout.Behavior offsets by moving the top; best guess for custom behaviors
+        return appBarLayout.getTop();
+    }
+
+    /**
+     * Brings a bound view to the displacement for the current offset of the AppBarLayout, right after
+     * the view has been laid out. AppBarLayouts get laid out before the views depending on them, so
+     * their offset is up to date by then; this way, relayouts that change the scroll range, the parent
+     * or the view itself show correctly on the first frame, instead of one offset event later.
+     * Offset events only need to take care of scrolling then.
+     */
+    void onViewLaidOut(@NonNull View view) {
+        int index = indexOf(view);
+        if (index < 0) {
+            return;
+        }
+        if (!SyncTrace.enabled) {
+            updateAfterLayout(index);
+            return;
+        }
+        SyncTrace.beginSection(SyncTrace.SECTION_VIEW_LAID_OUT);
+        try {
+            updateAfterLayout(index);
+        } finally {
+            SyncTrace.endSection();
+        }
+    }
+
+    private void updateAfterLayout(int index) {
+        refreshGeometry(index);
+        totalScrollRange = appBarLayout.getTotalScrollRange();
+        collapseFraction = Displacement.collapseFraction(currentOffset(appBarLayout), totalScrollRange);
+        update(index);
+    }
+
+    /**
+     * Binds the view to this dispatcher; the view will be displaced towards the bottom of parent,
+     * following the given curve. Binding an already bound view does nothing.
+     */
+    void register(@NonNull View parent, @NonNull View view, @NonNull DisplacementCurve curve) {
+        if (indexOf(view) >= 0) {
+            return;
+        }
+        if (size == translations.length) {
+            int capacity = size * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            bottomInsets = Arrays.copyOf(bottomInsets, capacity);
+            tops = Arrays.copyOf(tops, capacity);
+            parentBottoms = Arrays.copyOf(parentBottoms, capacity);
+            gone = Arrays.copyOf(gone, capacity);
+            translations = Arrays.copyOf(translations, capacity);
+            curves = Arrays.copyOf(curves, capacity);
+            thresholdModes = Arrays.copyOf(thresholdModes, capacity);
+            hideThresholds = Arrays.copyOf(hideThresholds, capacity);
+            showThresholds = Arrays.copyOf(showThresholds, capacity);
+            governed = Arrays.copyOf(governed, capacity);
+            hidden = Arrays.copyOf(hidden, capacity);
+            dormant = Arrays.copyOf(dormant, capacity);
+            predicting = Arrays.copyOf(predicting, capacity);
+            predictedFromFractions = Arrays.copyOf(predictedFromFractions, capacity);
+            predictedToFractions = Arrays.copyOf(predictedToFractions, capacity);
+        }
+        parents[size] = parent;
+        bottomInsets[size] = 0;
+        translations[size] = TranslationRegistry.of(view).getComponent(TranslationRegistry.COMPONENT_APP_BAR);
+        curves[size] = curve;
+        thresholdModes[size] = false;
+        hideThresholds[size] = 1.0f;
+        showThresholds[size] = 1.0f;
+        governed[size] = false;
+        hidden[size] = false;
+        dormant[size] = false;
+        predicting[size] = false;
+        refreshGeometry(size);
+        size++;
+
+        view.addOnLayoutChangeListener(this);
+        if (slotsOf(parent) == 1) {
+            parent.addOnLayoutChangeListener(this);
+        }
+    }
+
+    /**
+     * Binds the view like {@link #register(View, View, DisplacementCurve)}, continuing from the
+     * displacement it already has - for views that come from another AppBarLayout, or that were bound to
+     * this one before. If the collapse of this AppBarLayout asks for another displacement, the view is
+     * animated there, instead of jumping with the next offset event.
+     */
+    void adopt(@NonNull View parent, @NonNull View view, @NonNull DisplacementCurve curve) {
+        if (indexOf(view) >= 0) {
+            return;
+        }
+        register(parent, view, curve);
+        animateToCollapse(size - 1);
+    }
+
+    // animates a view in continuous mode to the displacement for the current collapse, if it is not there
+    private void animateToCollapse(int index) {
+        TranslationRegistry.Component translation = translations[index];
+        float fullDisplacement = Displacement.fullDisplacement(visibleBottom(index), top(index),
+                translation.getRegistry().getTranslationY(), translation.getValue());
+        float newTranslationYFromThis = Displacement.translationYByThis(fullDisplacement,
+                curves[index].map(collapseFraction));
+        if (Math.abs(newTranslationYFromThis - translation.getValue()) >= MIN_VISIBLE_TRANSLATION_CHANGE) {
+            translation.animateTo(newTranslationYFromThis);
+        }
+    }
+
+    /**
+     * Unbinds the view, taking back the part of its translation that came from this dispatcher.
+     * Unbinding a view that is not bound does nothing.
+     */
+    void unregister(@NonNull View view) {
+        int index = indexOf(view);
+        if (index < 0) {
+            return;
+        }
+        TranslationRegistry.Component translation = translations[index];
+        detach(index);
+        translation.setValue(0.0f);
+    }
+
+    /**
+     * Unbinds the view, but leaves its translation as it is, to be continued from by
+     * {@link #adopt(View, View, DisplacementCurve)}. Detaching a view that is not bound does nothing.
+     */
+    void detach(@NonNull View view) {
+        int index = indexOf(view);
+        if (index >= 0) {
+            detach(index);
+        }
+    }
+
+    private void detach(int index) {
+        translations[index].getRegistry().getView().removeOnLayoutChangeListener(this);
+        if (slotsOf(parents[index]) == 1) {
+            parents[index].removeOnLayoutChangeListener(this);
+        }
+        if (governed[index]) {
+            governedCount--;
+        }
+
+        int last = size - 1;
+        parents[index] = parents[last];
+        bottomInsets[index] = bottomInsets[last];
+        tops[index] = tops[last];
+        parentBottoms[index] = parentBottoms[last];
+        gone[index] = gone[last];
+        translations[index] = translations[last];
+        curves[index] = curves[last];
+        thresholdModes[index] = thresholdModes[last];
+        hideThresholds[index] = hideThresholds[last];
+        showThresholds[index] = showThresholds[last];
+        governed[index] = governed[last];
+        hidden[index] = hidden[last];
+        dormant[index] = dormant[last];
+        predicting[index] = predicting[last];
+        predictedFromFractions[index] = predictedFromFractions[last];
+        predictedToFractions[index] = predictedToFractions[last];
+        parents[last] = null;
+        translations[last] = null;
+        curves[last] = null;
+        size = last;
+    }
+
+    /**
+     * Changes the curve of a bound view; takes effect with the next offset event.
+     */
+    void setCurve(@NonNull View view, @NonNull DisplacementCurve curve) {
+        int index = indexOf(view);
+        if (index >= 0) {
+            curves[index] = curve;
+        }
+    }
+
+    /**
+     * Switches a bound view to threshold mode, or back to continuous mode. Takes effect with the next
+     * offset event.
+     */
+    void setThresholdMode(@NonNull View view, boolean thresholdMode) {
+        int index = indexOf(view);
+        if (index >= 0 && thresholdModes[index] != thresholdMode) {
+            thresholdModes[index] = thresholdMode;
+            hidden[index] = false;
+        }
+    }
+
+    /**
+     * Sets the collapse fractions at which a bound view gets hidden and shown in threshold mode, which
+     * it is in either by {@link #setThresholdMode(View, boolean)} or by its quality governor.
+     */
+    void setThresholds(@NonNull View view, float hideThreshold, float showThreshold) {
+        int index = indexOf(view);
+        if (index >= 0) {
+            hideThresholds[index] = hideThreshold;
+            showThresholds[index] = showThreshold;
+        }
+    }
+
+    /**
+     * Lets the given governor decide how much work a bound view may cost per frame; pass null to let
+     * the view follow every offset event again. All views of this dispatcher share one governor, the
+     * one set last.
+     */
+    void setQualityGovernor(@NonNull View view, @Nullable QualityGovernor governor) {
+        int index = indexOf(view);
+        if (index < 0) {
+            return;
+        }
+        if (governed[index] != (governor != null)) {
+            boolean wasInThresholdMode = inThresholdMode(index);
+            governed[index] = governor != null;
+            governedCount += governor != null ? 1 : -1;
+            if (wasInThresholdMode && !inThresholdMode(index)) {
+                hidden[index] = false;
+                animateToCollapse(index);
+            }
+        }
+        if (governor != null) {
+            this.governor = governor;
+            qualityLevel = governor.getLevel();
+        }
+    }
+
+    /**
+     * Sets how much of the bottom of the parent of a bound view is covered by system bars or the keyboard;
+     * the view gets displaced until it is behind them, instead of until the bottom of the parent. The
+     * view is brought up to date with the current collapse right away, without waiting for a relayout.
+     */
+    void setBottomInset(@NonNull View view, int bottomInset) {
+        int index = indexOf(view);
+        if (index >= 0 && bottomInsets[index] != bottomInset) {
+            bottomInsets[index] = bottomInset;
+            update(index);
+        }
+    }
+
+    /**
+     * Starts following a fling of the content with the given velocity in pixels per second, positive
+     * towards collapsing, by a single animation to the displacement at the collapse fraction the
+     * AppBarLayout is predicted to settle at. The content moves the AppBarLayout first, so a fling
+     * going further than the remaining scroll range stops moving it when it has covered that range:
+     * the animation then ends at full collapse or expansion, at that time on the spline of the fling.
+     * Does nothing for views in threshold mode, which need no per-event work anyway, and for views
+     * that are gone.
+     */
+    void predictFling(@NonNull View view, float velocity, @NonNull FlingPredictor predictor) {
+        int index = indexOf(view);
+        if (index < 0 || inThresholdMode(index) || dormant[index] || totalScrollRange <= 0) {
+            return;
+        }
+        float distance = predictor.getDistance(velocity);
+        float remaining = totalScrollRange * (distance > 0.0f ? 1.0f - collapseFraction : collapseFraction);
+        if (distance == 0.0f || remaining <= 0.0f) {
+            return;
+        }
+        float predictedFraction;
+        float endTimeFraction;
+        if (Math.abs(distance) <= remaining) {
+            predictedFraction = Math.max(0.0f, Math.min(1.0f, collapseFraction + distance / totalScrollRange));
+            endTimeFraction = 1.0f;
+        } else {
+            predictedFraction = distance > 0.0f ? 1.0f : 0.0f;
+            endTimeFraction = FlingPredictor.getTimeFraction(remaining / Math.abs(distance));
+        }
+        long durationMillis = (long) (predictor.getDurationMillis(velocity) * endTimeFraction);
+        flingInterpolator.setEndTimeFraction(endTimeFraction);
+
+        TranslationRegistry.Component translation = translations[index];
+        float fullDisplacement = Displacement.fullDisplacement(visibleBottom(index), top(index),
+                translation.getRegistry().getTranslationY(), translation.getValue());
+        float newTranslationYFromThis = Displacement.translationYByThis(fullDisplacement,
+                curves[index].map(predictedFraction));
+        translation.animateTo(newTranslationYFromThis, durationMillis, flingInterpolator);
+        predicting[index] = true;
+        predictedFromFractions[index] = collapseFraction;
+        predictedToFractions[index] = predictedFraction;
+        if (recorder != null) {
+            recorder.record(EventRecorder.TYPE_FLING_PREDICTED, view.getId(), (int) durationMillis, predictedFraction);
+        }
+    }
+
+    /**
+     * Ends following a fling by prediction; if the fling did not settle where predicted, the view is
+     * animated to where it belongs.
+     */
+    void endFlingPrediction(@NonNull View view) {
+        int index = indexOf(view);
+        if (index >= 0 && predicting[index]) {
+            predicting[index] = false;
+            if (dormant[index]) {
+                return;
+            }
+            TranslationRegistry.Component translation = translations[index];
+            float fullDisplacement = Displacement.fullDisplacement(visibleBottom(index), top(index),
+                    translation.getRegistry().getTranslationY(), translation.getValue());
+            float newTranslationYFromThis = Displacement.translationYByThis(fullDisplacement,
+                    curves[index].map(collapseFraction));
+            if (newTranslationYFromThis != translation.getValue()) {
+                // settled elsewhere than predicted: continue from where the animation is, instead of jumping
+                translation.animateTo(newTranslationYFromThis);
+            }
+        }
+    }
+
+    void setMetrics(SyncMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void setEventRecorder(EventRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    private boolean inThresholdMode(int index) {
+        return thresholdModes[index] || (governed[index] && qualityLevel == QualityGovernor.LEVEL_THRESHOLD);
+    }
+
+    private int top(int index) {
+        return tops[index];
+    }
+
+    // where the view is out of sight when its top gets there
+    private int visibleBottom(int index) {
+        return parentBottoms[index] - bottomInsets[index];
+    }
+
+    /**
+     * Refreshes the cached geometry of a bound view, for when one of its dependencies changed: the
+     * CoordinatorLayout may have moved it without a layout. If the view has moved, it is brought up to
+     * date with the current collapse right away.
+     */
+    void onDependencyChanged(@NonNull View view) {
+        int index = indexOf(view);
+        if (index >= 0 && refreshGeometry(index)) {
+            update(index);
+        }
+    }
+
+    // reads what the cached geometry of the view is made of; returns whether any of it changed
+    private boolean refreshGeometry(int index) {
+        View view = translations[index].getRegistry().getView();
+        int top = view.getTop();
+        int parentBottom = parents[index].getBottom();
+        boolean isGone = view.getVisibility() == View.GONE;
+        boolean changed = top != tops[index] || parentBottom != parentBottoms[index] || isGone != gone[index];
+        tops[index] = top;
+        parentBottoms[index] = parentBottom;
+        gone[index] = isGone;
+        return changed;
+    }
+
+    // how many slots have the given parent
+    private int slotsOf(View parent) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (parents[i] == parent) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int indexOf(View view) {
+        for (int i = 0; i < size; i++) {
+            if (translations[i].getRegistry().getView() == view) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                               int oldLeft, int oldTop, int oldRight, int oldBottom) {
+        if (v == appBarLayout) {
+            // the scroll range gets recomputed on layout, for example when children are added or removed
+            totalScrollRange = appBarLayout.getTotalScrollRange();
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            if (parents[i] == v) {
+                refreshGeometry(i);
+            } else if (translations[i].getRegistry().getView() == v) {
+                refreshGeometry(i);
+                if (dormant[i]) {
+                    // visible again, catch up with everything that happened meanwhile
+                    update(i);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onOffsetChanged(AppBarLayout appBarLayout, int verticalOffset) {
+        if (!SyncTrace.enabled) {
+            dispatchOffset(verticalOffset);
+            return;
+        }
+        SyncTrace.beginSection(SyncTrace.SECTION_OFFSET_CHANGED);
+        try {
+            dispatchOffset(verticalOffset);
+            SyncTrace.setCounter(SyncTrace.COUNTER_COLLAPSE, Math.round(collapseFraction * 1000));
+        } finally {
+            SyncTrace.endSection();
+        }
+    }
+
+    private void dispatchOffset(int verticalOffset) {
+        final SyncMetrics metrics = this.metrics;
+        final long startNanos = metrics != null ? System.nanoTime() : 0L;
+
+        // the views should scroll out down in sync with the appBarLayout scrolling out up.
+        // how far along the way the appBarLayout is is the same for all of them,
+        // how far along the way each view is depends on its curve
+        collapseFraction = Displacement.collapseFraction(verticalOffset, totalScrollRange);
+        if (recorder != null) {
+            recorder.record(EventRecorder.TYPE_OFFSET_CHANGED, appBarLayout.getId(), verticalOffset, totalScrollRange);
+        }
+
+        skippingReduced = qualityLevel == QualityGovernor.LEVEL_REDUCED && (++offsetEvents & 1) != 0;
+        for (int i = 0; i < size; i++) {
+            update(i);
+        }
+        skippingReduced = false;
+
+        if (governedCount > 0) {
+            offsetChangedSinceFrame = true;
+            if (!monitoringFrames) {
+                startMonitoringFrames();
+            }
+        }
+
+        if (metrics != null) {
+            metrics.recordOffsetEvent(startNanos, System.nanoTime());
+        }
+    }
+
+    private void update(int i) {
+        TranslationRegistry.Component translation = translations[i];
+        TranslationRegistry registry = translation.getRegistry();
+
+        if (gone[i]) {
+            // nobody can see it; catch up in one step once it gets laid out again
+            dormant[i] = true;
+            return;
+        }
+        dormant[i] = false;
+
+        float translationY = registry.getTranslationY();
+        float translationYByThis = translation.getValue();
+        float fullDisplacement = Displacement.fullDisplacement(visibleBottom(i), top(i),
+                translationY, translationYByThis);
+
+        if (inThresholdMode(i)) {
+            boolean hide = hidden[i]
+                    ? collapseFraction > showThresholds[i]
+                    : collapseFraction >= hideThresholds[i];
+            float newTranslationYFromThis = hide ? fullDisplacement : 0.0f;
+            if (hide != hidden[i] || (!hide && translationYByThis != 0.0f)) {
+                // crossed a threshold (or coming from continuous mode): one animation all the way
+                translation.animateTo(newTranslationYFromThis);
+                hidden[i] = hide;
+            } else if (hide && newTranslationYFromThis != translationYByThis) {
+                // stays hidden, but where it is out of sight has changed
+                translation.setValue(newTranslationYFromThis);
+            }
+            return;
+        }
+
+        if (skippingReduced && governed[i] && !predicting[i]) {
+            // caught up with by the next offset event, or when the AppBarLayout comes to rest
+            if (metrics != null) {
+                metrics.recordTranslationWriteSkipped();
+            }
+            return;
+        }
+
+        boolean tookOverFromPrediction = false;
+        if (predicting[i]) {
+            float from = predictedFromFractions[i];
+            float to = predictedToFractions[i];
+            if (collapseFraction >= Math.min(from, to) - MAX_PREDICTION_DRIFT
+                    && collapseFraction <= Math.max(from, to) + MAX_PREDICTION_DRIFT) {
+                // on the way to the prediction, the animation is taking care of it
+                if (metrics != null) {
+                    metrics.recordTranslationWriteSkipped();
+                }
+                return;
+            }
+            predicting[i] = false;
+            tookOverFromPrediction = true;
+        }
+
+        float newTranslationYFromThis = Displacement.translationYByThis(fullDisplacement,
+                curves[i].map(collapseFraction));
+        float delta = newTranslationYFromThis - translationYByThis;
+
+        if (tookOverFromPrediction) {
+            // drifted off the prediction: continue from where the animation is, instead of jumping
+            translation.animateTo(newTranslationYFromThis);
+            return;
+        }
+
+        // Skip writes without visible effect. Our part stays as it is, so the skipped change is
+        // not lost, but part of the next change that does get written.
+        boolean subPixel = Math.abs(delta) < MIN_VISIBLE_TRANSLATION_CHANGE && newTranslationYFromThis != 0.0f;
+        int visibleBottom = visibleBottom(i);
+        int top = top(i);
+        boolean outOfView = top + translationY >= visibleBottom
+                && top + translationY + delta >= visibleBottom;
+        if (subPixel || outOfView) {
+            if (metrics != null) {
+                metrics.recordTranslationWriteSkipped();
+            }
+            return;
+        }
+
+        translation.setValue(newTranslationYFromThis);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void startMonitoringFrames() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            // checked once per movement of the AppBarLayout, not per frame
+            PowerManager powerManager = (PowerManager) appBarLayout.getContext().getSystemService(Context.POWER_SERVICE);
+            if (powerManager != null && governor.setPowerSaveMode(powerManager.isPowerSaveMode())) {
+                applyQualityLevel(governor.getLevel());
+            }
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return;
+        }
+        if (frameCallback == null) {
+            frameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    onFrame(frameTimeNanos);
+                }
+            };
+        }
+        monitoringFrames = true;
+        offsetChangedSinceFrame = false;
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void onFrame(long frameTimeNanos) {
+        if (governor == null) {
+            monitoringFrames = false;
+            return;
+        }
+        if (governor.onFrame(frameTimeNanos)) {
+            applyQualityLevel(governor.getLevel());
+        }
+        if (offsetChangedSinceFrame) {
+            offsetChangedSinceFrame = false;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+            return;
+        }
+        // the AppBarLayout has come to rest
+        monitoringFrames = false;
+        governor.resetFrameTime();
+        if (qualityLevel == QualityGovernor.LEVEL_REDUCED && (offsetEvents & 1) != 0) {
+            // the last offset event has been skipped
+            for (int i = 0; i < size; i++) {
+                if (governed[i]) {
+                    update(i);
+                }
+            }
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void stopMonitoringFrames() {
+        if (monitoringFrames) {
+            Choreographer.getInstance().removeFrameCallback(frameCallback);
+            monitoringFrames = false;
+        }
+    }
+
+    private void applyQualityLevel(int level) {
+        int oldLevel = qualityLevel;
+        qualityLevel = level;
+        if (recorder != null) {
+            recorder.record(EventRecorder.TYPE_QUALITY_LEVEL, appBarLayout.getId(), level, 0.0f);
+        }
+        for (int i = 0; i < size; i++) {
+            if (!governed[i] || thresholdModes[i] || dormant[i]) {
+                continue;
+            }
+            if (oldLevel == QualityGovernor.LEVEL_THRESHOLD) {
+                // back to following the collapse, from wherever the threshold mode left the view
+                hidden[i] = false;
+                animateToCollapse(i);
+            } else if (level == QualityGovernor.LEVEL_THRESHOLD) {
+                hidden[i] = false;
+                update(i);
+            }
+        }
+    }
+
+    /**
+     * Follows the spline of a fling from its start up to the given fraction of its duration, scaled to
+     * run from 0 to 1 over that part.
+     */
+    private static final class FlingInterpolator implements Interpolator {
+
+        private float endTimeFraction = 1.0f;
+        private float endDistanceFraction = 1.0f;
+
+        void setEndTimeFraction(float endTimeFraction) {
+            this.endTimeFraction = endTimeFraction;
+            this.endDistanceFraction = FlingPredictor.getDistanceFraction(endTimeFraction);
+        }
+
+        @Override
+        public float getInterpolation(float input) {
+            if (endDistanceFraction <= 0.0f) {
+                return 1.0f;
+            }
+            return FlingPredictor.getDistanceFraction(input * endTimeFraction) / endDistanceFraction;
+        }
+    }
+}
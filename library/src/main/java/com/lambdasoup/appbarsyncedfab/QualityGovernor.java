@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+/**
+ * Decides how much work synced views may cost per frame, from the frame times while the AppBarLayout
+ * moves. Under sustained long frames, it degrades step by step: from following every offset event
+ * ({@link #LEVEL_CONTINUOUS}), to following every other one ({@link #LEVEL_REDUCED}), to a single
+ * hide or show animation at the thresholds of the view ({@link #LEVEL_THRESHOLD}). Once frames are back
+ * within budget for long enough, it recovers step by step again. In power save mode, it stays at
+ * {@link #LEVEL_THRESHOLD}.
+ * <p/>
+ * A frame counts as long when it takes more than degradeFactor times the frame budget, and as
+ * smooth when it takes at most recoverFactor times the budget; frames in between count as neither,
+ * which is the hysteresis that keeps the level from flapping. Each long frame adds to the pressure,
+ * each smooth frame takes from it; degradeFrames of pressure degrade one level. Recovering one level
+ * takes recoverFrames smooth frames in a row.
+ * <p/>
+ * Set an instance on the behaviors of the views to govern, with
+ * {@link AppBarSyncedBehavior#setQualityGovernor(QualityGovernor)}. Frame times are fed in by the
+ * library, from {@link android.view.Choreographer} frame callbacks, only while the AppBarLayout moves.
+ * Kept free of Android dependencies, so that frame timings can be fed in by hand.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class QualityGovernor {
+
+    public static final int LEVEL_CONTINUOUS = 0;
+    public static final int LEVEL_REDUCED = 1;
+    public static final int LEVEL_THRESHOLD = 2;
+
+    private static final long DEFAULT_FRAME_BUDGET_NANOS = 16666667L;
+    private static final float DEFAULT_DEGRADE_FACTOR = 1.5f;
+    private static final float DEFAULT_RECOVER_FACTOR = 1.1f;
+    private static final int DEFAULT_DEGRADE_FRAMES = 8;
+    private static final int DEFAULT_RECOVER_FRAMES = 60;
+
+    // frame gaps longer than this are pauses, not long frames
+    private static final long MAX_FRAME_NANOS = 250000000L;
+
+    private final long longFrameNanos;
+    private final long smoothFrameNanos;
+    private final int degradeFrames;
+    private final int recoverFrames;
+
+    private int level = LEVEL_CONTINUOUS;
+    private boolean powerSaveMode = false;
+    private long lastFrameTimeNanos = 0L;
+    private int pressure = 0;
+    private int smoothFrames = 0;
+
+    /**
+     * Governor for 60 frames per second, degrading at 1.5 times the frame budget after 8 frames of
+     * pressure, recovering at 1.1 times the budget after 60 smooth frames.
+     */
+    public QualityGovernor() {
+        this(DEFAULT_FRAME_BUDGET_NANOS, DEFAULT_DEGRADE_FACTOR, DEFAULT_RECOVER_FACTOR,
+                DEFAULT_DEGRADE_FRAMES, DEFAULT_RECOVER_FRAMES);
+    }
+
+    /**
+     * @param frameBudgetNanos time per frame at the refresh rate of the display
+     * @param degradeFactor    frames longer than this times the budget are long
+     * @param recoverFactor    frames not longer than this times the budget are smooth; at most degradeFactor
+     * @param degradeFrames    pressure from long frames that degrades one level
+     * @param recoverFrames    smooth frames in a row that recover one level
+     */
+    public QualityGovernor(long frameBudgetNanos, float degradeFactor, float recoverFactor,
+                           int degradeFrames, int recoverFrames) {
+        if (frameBudgetNanos <= 0) {
+            throw new IllegalArgumentException("frame budget must be positive, but is " + frameBudgetNanos);
+        }
+        if (recoverFactor > degradeFactor) {
+            throw new IllegalArgumentException("recover factor " + recoverFactor
+                    + " must not be above degrade factor " + degradeFactor);
+        }
+        if (degradeFrames < 1 || recoverFrames < 1) {
+            throw new IllegalArgumentException("frame counts must be positive, but are "
+                    + degradeFrames + " and " + recoverFrames);
+        }
+        this.longFrameNanos = (long) (frameBudgetNanos * degradeFactor);
+        this.smoothFrameNanos = (long) (frameBudgetNanos * recoverFactor);
+        this.degradeFrames = degradeFrames;
+        this.recoverFrames = recoverFrames;
+    }
+
+    /**
+     * Current level, one of {@link #LEVEL_CONTINUOUS}, {@link #LEVEL_REDUCED} and {@link #LEVEL_THRESHOLD}.
+     */
+    public int getLevel() {
+        return powerSaveMode ? LEVEL_THRESHOLD : level;
+    }
+
+    /**
+     * Feeds in the time of a frame, as given to {@link android.view.Choreographer.FrameCallback#doFrame(long)}.
+     * Frames of the same time are counted once.
+     *
+     * @return whether the level has changed
+     */
+    public boolean onFrame(long frameTimeNanos) {
+        long last = lastFrameTimeNanos;
+        if (frameTimeNanos <= last) {
+            return false;
+        }
+        lastFrameTimeNanos = frameTimeNanos;
+        long frameNanos = frameTimeNanos - last;
+        if (last == 0L || frameNanos > MAX_FRAME_NANOS) {
+            return false;
+        }
+
+        int oldLevel = getLevel();
+        if (frameNanos > longFrameNanos) {
+            smoothFrames = 0;
+            if (++pressure >= degradeFrames) {
+                pressure = 0;
+                if (level < LEVEL_THRESHOLD) {
+                    level++;
+                }
+            }
+        } else if (frameNanos <= smoothFrameNanos) {
+            if (pressure > 0) {
+                pressure--;
+            }
+            if (++smoothFrames >= recoverFrames) {
+                smoothFrames = 0;
+                if (level > LEVEL_CONTINUOUS) {
+                    level--;
+                }
+            }
+        }
+        return getLevel() != oldLevel;
+    }
+
+    /**
+     * Forgets the last frame time; the next frame starts a new series, for example after a pause.
+     */
+    public void resetFrameTime() {
+        lastFrameTimeNanos = 0L;
+    }
+
+    /**
+     * @return whether the level has changed
+     */
+    public boolean setPowerSaveMode(boolean powerSaveMode) {
+        int oldLevel = getLevel();
+        this.powerSaveMode = powerSaveMode;
+        return getLevel() != oldLevel;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Opt-in performance metrics for the hot paths of this library: offset events from the AppBarLayout,
+ * displacement updates for obstructions, like snackbars, and translation writes. Set the same instance
+ * on all behaviors (and offsetters) whose cost you want to see together, with
+ * {@link AppBarBoundFabBehavior#setMetrics(SyncMetrics)} and {@link FabOffsetter#setMetrics(SyncMetrics)}.
+ * <p/>
+ * Counters are plain primitive fields, only ever touched from the main thread, so recording is a few
+ * additions and no locking. They are gathered into a {@link Snapshot} and handed to the listener once
+ * per interval, from the first event after the interval has passed; an idle screen produces no
+ * snapshots and costs nothing. Without metrics set, the hot paths only pay for a null check.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SyncMetrics {
+
+    /**
+     * Receives metrics snapshots, on the main thread.
+     */
+    public interface Listener {
+        /**
+         * @param snapshot metrics of the interval that just passed. The instance is reused for the
+         *                 next interval; copy out what you want to keep.
+         */
+        void onMetricsSnapshot(@NonNull Snapshot snapshot);
+    }
+
+    /**
+     * Metrics of one interval.
+     */
+    public static final class Snapshot {
+        long intervalNanos;
+        int offsetEvents;
+        long offsetNanos;
+        int obstructionUpdates;
+        long obstructionUpdateNanos;
+        int obstructionAnimationsStarted;
+        int obstructionAnimationsInterrupted;
+        int translationWrites;
+        int translationWritesSkipped;
+
+        Snapshot() {
+        }
+
+        /**
+         * Actual length of the interval, from its first event to the event that completed it.
+         */
+        public long getIntervalMillis() {
+            return intervalNanos / 1000000L;
+        }
+
+        /**
+         * Number of offset events handled.
+         */
+        public int getOffsetEvents() {
+            return offsetEvents;
+        }
+
+        public float getOffsetEventsPerSecond() {
+            return intervalNanos == 0 ? 0.0f : offsetEvents * 1e9f / intervalNanos;
+        }
+
+        /**
+         * Total time spent handling offset events, in nanoseconds.
+         */
+        public long getOffsetNanos() {
+            return offsetNanos;
+        }
+
+        /**
+         * Number of displacement updates for obstructions, from dependency changes.
+         */
+        public int getObstructionUpdates() {
+            return obstructionUpdates;
+        }
+
+        /**
+         * Total time spent in displacement updates for obstructions, in nanoseconds.
+         */
+        public long getObstructionUpdateNanos() {
+            return obstructionUpdateNanos;
+        }
+
+        /**
+         * Number of displacement animations for obstructions started.
+         */
+        public int getObstructionAnimationsStarted() {
+            return obstructionAnimationsStarted;
+        }
+
+        /**
+         * Number of displacement animations for obstructions interrupted by a new target while running.
+         * They are not restarted, but continue towards the new target.
+         */
+        public int getObstructionAnimationsInterrupted() {
+            return obstructionAnimationsInterrupted;
+        }
+
+        /**
+         * Number of translationY writes to views.
+         */
+        public int getTranslationWrites() {
+            return translationWrites;
+        }
+
+        /**
+         * Number of requested translation changes that did not need a write of their own: because
+         * they did not change anything, were coalesced into a write for the frame, or were deferred
+         * until an animation ended.
+         */
+        public int getTranslationWritesSkipped() {
+            return translationWritesSkipped;
+        }
+    }
+
+    private final Listener listener;
+    private final long intervalNanos;
+    private final Snapshot snapshot = new Snapshot();
+
+    private long intervalStartNanos = -1;
+    private int offsetEvents;
+    private long offsetNanos;
+    private int obstructionUpdates;
+    private long obstructionUpdateNanos;
+    private int obstructionAnimationsStarted;
+    private int obstructionAnimationsInterrupted;
+    private int translationWrites;
+    private int translationWritesSkipped;
+
+    /**
+     * @param listener       receives the snapshots
+     * @param intervalMillis length of the interval after which a snapshot is taken
+     */
+    public SyncMetrics(@NonNull Listener listener, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("interval must be positive, got " + intervalMillis);
+        }
+        this.listener = listener;
+        this.intervalNanos = intervalMillis * 1000000L;
+    }
+
+    void recordOffsetEvent(long startNanos, long endNanos) {
+        offsetEvents++;
+        offsetNanos += endNanos - startNanos;
+        maybeReport(endNanos);
+    }
+
+    void recordObstructionUpdate(long startNanos, long endNanos) {
+        obstructionUpdates++;
+        obstructionUpdateNanos += endNanos - startNanos;
+        maybeReport(endNanos);
+    }
+
+    void recordObstructionAnimationStarted() {
+        obstructionAnimationsStarted++;
+    }
+
+    void recordObstructionAnimationInterrupted() {
+        obstructionAnimationsInterrupted++;
+    }
+
+    void recordTranslationWrite() {
+        translationWrites++;
+    }
+
+    void recordTranslationWriteSkipped() {
+        translationWritesSkipped++;
+    }
+
+    private void maybeReport(long nowNanos) {
+        if (intervalStartNanos < 0) {
+            intervalStartNanos = nowNanos;
+            return;
+        }
+        long elapsedNanos = nowNanos - intervalStartNanos;
+        if (elapsedNanos < intervalNanos) {
+            return;
+        }
+
+        snapshot.intervalNanos = elapsedNanos;
+        snapshot.offsetEvents = offsetEvents;
+        snapshot.offsetNanos = offsetNanos;
+        snapshot.obstructionUpdates = obstructionUpdates;
+        snapshot.obstructionUpdateNanos = obstructionUpdateNanos;
+        snapshot.obstructionAnimationsStarted = obstructionAnimationsStarted;
+        snapshot.obstructionAnimationsInterrupted = obstructionAnimationsInterrupted;
+        snapshot.translationWrites = translationWrites;
+        snapshot.translationWritesSkipped = translationWritesSkipped;
+
+        intervalStartNanos = nowNanos;
+        offsetEvents = 0;
+        offsetNanos = 0;
+        obstructionUpdates = 0;
+        obstructionUpdateNanos = 0;
+        obstructionAnimationsStarted = 0;
+        obstructionAnimationsInterrupted = 0;
+        translationWrites = 0;
+        translationWritesSkipped = 0;
+
+        listener.onMetricsSnapshot(snapshot);
+    }
+}
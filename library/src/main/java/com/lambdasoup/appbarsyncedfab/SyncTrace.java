@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+import androidx.annotation.NonNull;
+import androidx.core.os.TraceCompat;
+
+/**
+ * Opt-in trace sections for the hot paths of this library, so that its work shows up as slices of its
+ * own in system traces (systrace, Perfetto, the Android Studio profiler) and can be told apart from the
+ * cost of the scrolling content or of the AppBarLayout:
+ * <ul>
+ * <li>{@value #SECTION_OFFSET_CHANGED}: an offset event of the AppBarLayout, for all views synced to it</li>
+ * <li>{@value #SECTION_VIEW_LAID_OUT}: bringing a view to its displacement right after its layout</li>
+ * <li>{@value #SECTION_OBSTRUCTIONS}: moving a view out of the way of obstructions, like snackbars</li>
+ * <li>{@value #SECTION_OBSTRUCTION_HEIGHT}: asking an {@link ObstructionProvider} for the height of an
+ * obstruction</li>
+ * <li>{@value #SECTION_ANIMATION_START} and {@value #SECTION_ANIMATION_CANCEL}: starting, replacing and
+ * cancelling translation animations</li>
+ * </ul>
+ * From Android 10 on, there are counter tracks as well: {@value #COUNTER_COLLAPSE}, the collapse of
+ * the AppBarLayout in thousandths, and {@value #COUNTER_OBSTRUCTIONS}, the number of obstructions
+ * overlapping a view.
+ * <p/>
+ * Tracing is off by default; while it is, each call site only checks a static boolean. Sections need
+ * Jelly Bean MR2 and are never emitted below.
+ * <p/>
+ * Must be used on the main thread only.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SyncTrace {
+
+    public static final String SECTION_OFFSET_CHANGED = "AppBarSynced#onOffsetChanged";
+    public static final String SECTION_VIEW_LAID_OUT = "AppBarSynced#onViewLaidOut";
+    public static final String SECTION_OBSTRUCTIONS = "AppBarSynced#updateForObstructions";
+    public static final String SECTION_OBSTRUCTION_HEIGHT = "AppBarSynced#getObstructionHeight";
+    public static final String SECTION_ANIMATION_START = "AppBarSynced#startAnimation";
+    public static final String SECTION_ANIMATION_CANCEL = "AppBarSynced#cancelAnimation";
+
+    public static final String COUNTER_COLLAPSE = "AppBarSynced collapse";
+    public static final String COUNTER_OBSTRUCTIONS = "AppBarSynced obstructions";
+
+    // checked at every call site; a section begun is ended by the same call site, even if this
+    // changes in between, so that sections are always balanced
+    static boolean enabled = false;
+
+    private SyncTrace() {
+    }
+
+    /**
+     * Turns the trace sections and counters of this library on or off, for all views.
+     */
+    public static void setEnabled(boolean enabled) {
+        SyncTrace.enabled = enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    static void beginSection(@NonNull String sectionName) {
+        TraceCompat.beginSection(sectionName);
+    }
+
+    static void endSection() {
+        TraceCompat.endSection();
+    }
+
+    @TargetApi(Build.VERSION_CODES.Q)
+    static void setCounter(@NonNull String counterName, long value) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.setCounter(counterName, value);
+        }
+    }
+}
@@ -0,0 +1,557 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.animation.AnimationUtils;
+import android.view.animation.Interpolator;
+
+import androidx.annotation.NonNull;
+import androidx.core.view.ViewCompat;
+import androidx.interpolator.view.animation.FastOutSlowInInterpolator;
+
+import java.util.Arrays;
+
+/**
+ * The translationY of one view, composed of named components: one for the displacement by the
+ * AppBarLayout ({@link #COMPONENT_APP_BAR}), one for moving out of the way of obstructions
+ * ({@link #COMPONENT_OBSTRUCTIONS}), and any number registered by your own code. There is one instance
+ * per view, obtained with {@link #of(View)}.
+ * <p/>
+ * Each component is set to an absolute value; translationY is their sum, written to the view once per
+ * change. Translation set on the view directly is kept as well, as a part of its own: it is noticed on
+ * the next write or layout, and written along from then on. Still, translate views synced by this
+ * library through a component of your own rather than directly, so that your changes compose with
+ * those of the library instead of racing them:
+ * <pre>
+ * TranslationRegistry.Component lift = TranslationRegistry.of(fab).getComponent("lift");
+ * lift.animateTo(-liftHeight);
+ * </pre>
+ * <p/>
+ * Components are animated each on their own. While only one component animates and nothing else
+ * changes, the composed translation is animated by a single {@link android.view.ViewPropertyAnimator} on
+ * a hardware layer, which needs no work on the main thread per frame. Once another component changes
+ * or starts animating too, that animation is cancelled where it is, and the values of all running
+ * animations are stepped once per animation frame instead, composed with the other components. Either
+ * way, animating one component never holds back or replaces changes of another one.
+ * <p/>
+ * By default, every change is written through immediately. When coalescing, all changes requested
+ * within one frame are written once, so that several offset events and obstruction updates in the
+ * same frame cost a single property write. They are written right before the frame is drawn, from a
+ * pre-draw listener, or from an animation callback posted with the first change, whichever comes
+ * first. Pre-draw comes after the animation callbacks of the frame, where flings deliver their offset
+ * events, so the written translation is never a frame behind the AppBarLayout. The callback makes sure
+ * there is a frame without invalidating anything: the property write only updates the render node of
+ * the view, and its display list is not recorded again. The listener stays registered from the first
+ * coalesced change until the view is detached; adding and removing it per frame would make the
+ * observer copy its listeners on every frame.
+ * <p/>
+ * Must be used on the main thread only.
+ */
+public final class TranslationRegistry implements View.OnLayoutChangeListener {
+
+    /**
+     * Name of the component displacing the view along with the collapse of the AppBarLayout.
+     */
+    public static final String COMPONENT_APP_BAR = "appbarsyncedfab:appBar";
+
+    /**
+     * Name of the component moving the view out of the way of obstructions, like snackbars.
+     */
+    public static final String COMPONENT_OBSTRUCTIONS = "appbarsyncedfab:obstructions";
+
+    private static final long ANIMATION_DURATION_MILLIS = 200;
+    private static final Interpolator ANIMATION_INTERPOLATOR = new FastOutSlowInInterpolator();
+
+    private final View view;
+
+    // components in order of registration; the library registers its own first
+    private Component[] components = new Component[2];
+    private int componentCount = 0;
+    private int animatingCount = 0;
+    // part of the translation set on the view directly, from outside of any component
+    private float externalTranslationY;
+    // translation of the view once all animations have ended
+    private float translationY;
+    // translation of the view as last written or read
+    private float writtenTranslationY;
+
+    private boolean coalescing = false;
+    private boolean writePending = false;
+    // the observer the pre-draw listener was added to, while it is registered
+    private ViewTreeObserver preDrawObserver;
+    private final ViewTreeObserver.OnPreDrawListener preDrawListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            flushPendingWrite();
+            return true;
+        }
+    };
+    private boolean flushFramePosted = false;
+    private final Runnable flushFrame = new Runnable() {
+        @Override
+        public void run() {
+            flushFramePosted = false;
+            flushPendingWrite();
+        }
+    };
+    private final View.OnAttachStateChangeListener attachStateListener = new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(View v) {
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            // the observer of the window goes away with it; nothing gets drawn until attached again
+            removePreDrawListener();
+            if (flushFramePosted) {
+                view.removeCallbacks(flushFrame);
+                flushFramePosted = false;
+            }
+            handOverRenderAnimation();
+            flushPendingWrite();
+        }
+    };
+
+    private SyncMetrics metrics;
+    private EventRecorder recorder;
+
+    // the only component animating, while animated by a ViewPropertyAnimator rather than stepped
+    private Component renderAnimated;
+    private final Runnable renderAnimationEndAction = new Runnable() {
+        @Override
+        public void run() {
+            Component component = renderAnimated;
+            if (component == null) {
+                return;
+            }
+            renderAnimated = null;
+            writtenTranslationY = view.getTranslationY();
+            component.endAnimation();
+            if (recorder != null) {
+                recorder.record(EventRecorder.TYPE_ANIMATION_ENDED, view.getId(), 0, component.value);
+            }
+            flush();
+        }
+    };
+
+    private boolean animationFramePosted = false;
+    private final Runnable animationFrame = new Runnable() {
+        @Override
+        public void run() {
+            animationFramePosted = false;
+            stepAnimations();
+        }
+    };
+
+    private TranslationRegistry(View view) {
+        this.view = view;
+        this.externalTranslationY = view.getTranslationY();
+        this.translationY = externalTranslationY;
+        this.writtenTranslationY = translationY;
+    }
+
+    /**
+     * Returns the registry of the given view, creating it on first use.
+     */
+    @NonNull
+    public static TranslationRegistry of(@NonNull View view) {
+        Object tag = view.getTag(R.id.appbarsyncedfab_translation_registry);
+        if (tag instanceof TranslationRegistry) {
+            return (TranslationRegistry) tag;
+        }
+        TranslationRegistry registry = new TranslationRegistry(view);
+        view.setTag(R.id.appbarsyncedfab_translation_registry, registry);
+        view.addOnLayoutChangeListener(registry);
+        view.addOnAttachStateChangeListener(registry.attachStateListener);
+        return registry;
+    }
+
+    @NonNull
+    public View getView() {
+        return view;
+    }
+
+    /**
+     * Returns the component of the given name, registering it at 0 on first use. Look components up
+     * once and keep them, rather than once per change.
+     */
+    @NonNull
+    public Component getComponent(@NonNull String name) {
+        for (int i = 0; i < componentCount; i++) {
+            if (components[i].name.equals(name)) {
+                return components[i];
+            }
+        }
+        if (componentCount == components.length) {
+            components = Arrays.copyOf(components, componentCount * 2);
+        }
+        Component component = new Component(name);
+        components[componentCount++] = component;
+        return component;
+    }
+
+    /**
+     * Translation the view has once all requested changes are written and all animations have ended:
+     * the sum of the values of all components and of the translation set on the view directly.
+     */
+    public float getTranslationY() {
+        return translationY;
+    }
+
+    void setMetrics(SyncMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void setEventRecorder(EventRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    void setCoalescing(boolean coalescing) {
+        this.coalescing = coalescing;
+        if (!coalescing) {
+            // don't leave anything behind for a pre-draw that might never come
+            removePreDrawListener();
+            flushPendingWrite();
+        }
+    }
+
+    // sums up from scratch, so that no rounding error builds up over many changes
+    private void compose() {
+        float sum = externalTranslationY;
+        for (int i = 0; i < componentCount; i++) {
+            sum += components[i].value;
+        }
+        translationY = sum;
+    }
+
+    // translation as of now, with running animations where they are
+    private float currentTranslationY() {
+        if (animatingCount == 0) {
+            return translationY;
+        }
+        float sum = externalTranslationY;
+        for (int i = 0; i < componentCount; i++) {
+            sum += components[i].animating ? components[i].animatedValue : components[i].value;
+        }
+        return sum;
+    }
+
+    private void write() {
+        // the animation of the view would not take the change along
+        handOverRenderAnimation();
+        if (!coalescing || !ViewCompat.isAttachedToWindow(view)) {
+            // nothing gets drawn while detached
+            flush();
+            return;
+        }
+        if (writePending) {
+            recordWriteSkipped();
+            return;
+        }
+        writePending = true;
+        if (preDrawObserver == null) {
+            preDrawObserver = view.getViewTreeObserver();
+            preDrawObserver.addOnPreDrawListener(preDrawListener);
+        }
+        // make sure there is a next frame, even if nothing else changes, without invalidating
+        if (!flushFramePosted) {
+            flushFramePosted = true;
+            ViewCompat.postOnAnimation(view, flushFrame);
+        }
+    }
+
+    private void flushPendingWrite() {
+        if (writePending) {
+            writePending = false;
+            flush();
+        }
+    }
+
+    private void removePreDrawListener() {
+        if (preDrawObserver == null) {
+            return;
+        }
+        if (preDrawObserver.isAlive()) {
+            preDrawObserver.removeOnPreDrawListener(preDrawListener);
+        } else {
+            // merged into the observer of the window on attach
+            view.getViewTreeObserver().removeOnPreDrawListener(preDrawListener);
+        }
+        preDrawObserver = null;
+    }
+
+    private void startRenderAnimation(Component component, long durationMillis, Interpolator interpolator) {
+        final boolean tracing = SyncTrace.enabled;
+        if (tracing) {
+            SyncTrace.beginSection(SyncTrace.SECTION_ANIMATION_START);
+        }
+        try {
+            // animates to everything requested so far, so nothing is left to write
+            renderAnimated = component;
+            writePending = false;
+            ViewCompat.animate(view)
+                    .translationY(translationY)
+                    .setDuration(durationMillis)
+                    .setInterpolator(interpolator)
+                    .withLayer()
+                    .withEndAction(renderAnimationEndAction);
+            if (metrics != null) {
+                metrics.recordTranslationWrite();
+            }
+        } finally {
+            if (tracing) {
+                SyncTrace.endSection();
+            }
+        }
+    }
+
+    // cancels the animation of the view where it is; returns the component it animated, if any
+    private Component cancelRenderAnimation() {
+        Component component = renderAnimated;
+        if (component == null) {
+            return null;
+        }
+        final boolean tracing = SyncTrace.enabled;
+        if (tracing) {
+            SyncTrace.beginSection(SyncTrace.SECTION_ANIMATION_CANCEL);
+        }
+        try {
+            renderAnimated = null;
+            ViewCompat.animate(view).cancel();
+            writtenTranslationY = view.getTranslationY();
+        } finally {
+            if (tracing) {
+                SyncTrace.endSection();
+            }
+        }
+        return component;
+    }
+
+    // continues the animation of the view, if any, by stepping it on the main thread
+    private void handOverRenderAnimation() {
+        Component component = cancelRenderAnimation();
+        if (component != null) {
+            component.step(AnimationUtils.currentAnimationTimeMillis());
+            if (component.animating) {
+                postAnimationFrame();
+            }
+        }
+    }
+
+    private void postAnimationFrame() {
+        if (!animationFramePosted) {
+            animationFramePosted = true;
+            ViewCompat.postOnAnimation(view, animationFrame);
+        }
+    }
+
+    private void stepAnimations() {
+        if (renderAnimated != null) {
+            // posted before the animation of the view took over
+            return;
+        }
+        long frameMillis = AnimationUtils.currentAnimationTimeMillis();
+        for (int i = 0; i < componentCount; i++) {
+            Component component = components[i];
+            if (component.animating) {
+                component.step(frameMillis);
+            }
+        }
+        // once per frame anyway, no need to coalesce
+        flush();
+        if (animatingCount > 0) {
+            postAnimationFrame();
+        }
+    }
+
+    private void flush() {
+        if (renderAnimated != null) {
+            // on its way to the composed translation already
+            return;
+        }
+        float actualTranslationY = view.getTranslationY();
+        if (actualTranslationY != writtenTranslationY) {
+            // set directly since the last write, keep it rather than overwrite it
+            takeExternalTranslation(actualTranslationY);
+        }
+        float currentTranslationY = currentTranslationY();
+        if (currentTranslationY != writtenTranslationY) {
+            view.setTranslationY(currentTranslationY);
+            writtenTranslationY = currentTranslationY;
+            if (metrics != null) {
+                metrics.recordTranslationWrite();
+            }
+            if (recorder != null) {
+                recorder.record(EventRecorder.TYPE_TRANSLATION_WRITTEN, view.getId(), 0, currentTranslationY);
+            }
+        }
+    }
+
+    private void recordWriteSkipped() {
+        if (metrics != null) {
+            metrics.recordTranslationWriteSkipped();
+        }
+    }
+
+    @Override
+    public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                               int oldLeft, int oldTop, int oldRight, int oldBottom) {
+        if (renderAnimated != null) {
+            // the animation of the view moves it, not anyone else
+            return;
+        }
+        float actualTranslationY = view.getTranslationY();
+        if (actualTranslationY != writtenTranslationY) {
+            takeExternalTranslation(actualTranslationY);
+        }
+    }
+
+    // translation set on the view directly, keep it like any other component
+    private void takeExternalTranslation(float actualTranslationY) {
+        externalTranslationY += actualTranslationY - writtenTranslationY;
+        compose();
+        writtenTranslationY = actualTranslationY;
+        if (recorder != null) {
+            recorder.record(EventRecorder.TYPE_EXTERNAL_TRANSLATION, view.getId(), 0, actualTranslationY);
+        }
+    }
+
+    /**
+     * One named part of the translation of the view. Changing or animating it leaves all other
+     * components alone.
+     */
+    public final class Component {
+
+        private final String name;
+        // value once the animation, if any, has ended
+        private float value;
+
+        private boolean animating = false;
+        private float animatedValue;
+        private float animationStartValue;
+        private long animationStartMillis;
+        private long animationDurationMillis;
+        private Interpolator animationInterpolator;
+
+        private Component(String name) {
+            this.name = name;
+        }
+
+        @NonNull
+        public String getName() {
+            return name;
+        }
+
+        @NonNull
+        public TranslationRegistry getRegistry() {
+            return TranslationRegistry.this;
+        }
+
+        /**
+         * Value of this part of the translation; while animating, the value it is animating to.
+         */
+        public float getValue() {
+            return value;
+        }
+
+        /**
+         * Sets this part of the translation, writing the composed translation to the view. A running
+         * animation of this component ends where it is, and the value is taken over from there.
+         */
+        public void setValue(float value) {
+            if (animating) {
+                if (renderAnimated == this) {
+                    cancelRenderAnimation();
+                }
+                endAnimation();
+            } else if (value == this.value) {
+                recordWriteSkipped();
+                return;
+            }
+            this.value = value;
+            compose();
+            write();
+        }
+
+        /**
+         * Like {@link #setValue(float)}, but animates this part of the translation there. A running
+         * animation of this component is replaced, continuing from where it is; other components keep
+         * changing meanwhile. While no other component animates or changes, the animation runs on a
+         * hardware layer, without work on the main thread per frame.
+         */
+        public void animateTo(float value) {
+            animateTo(value, ANIMATION_DURATION_MILLIS, ANIMATION_INTERPOLATOR);
+        }
+
+        /**
+         * Like {@link #animateTo(float)}, with the given duration and interpolator.
+         */
+        public void animateTo(float value, long durationMillis, @NonNull Interpolator interpolator) {
+            if (renderAnimated == this) {
+                // not stepped while the view animates; catch up, to continue from where it is
+                step(AnimationUtils.currentAnimationTimeMillis());
+            }
+            if (animating) {
+                if (recorder != null) {
+                    recorder.record(EventRecorder.TYPE_ANIMATION_REPLACED, view.getId(), 0, animatedValue);
+                }
+                animationStartValue = animatedValue;
+            } else {
+                animationStartValue = this.value;
+                animatedValue = animationStartValue;
+                animating = true;
+                animatingCount++;
+            }
+            this.value = value;
+            animationStartMillis = AnimationUtils.currentAnimationTimeMillis();
+            animationDurationMillis = durationMillis;
+            animationInterpolator = interpolator;
+            compose();
+            if (recorder != null) {
+                recorder.record(EventRecorder.TYPE_ANIMATION_STARTED, view.getId(), (int) durationMillis, value);
+            }
+            if (animatingCount == 1) {
+                // the only animation; replaces one of the view of this component, if any
+                startRenderAnimation(this, durationMillis, interpolator);
+            } else {
+                handOverRenderAnimation();
+                postAnimationFrame();
+            }
+        }
+
+        private void step(long frameMillis) {
+            long elapsedMillis = frameMillis - animationStartMillis;
+            if (elapsedMillis >= animationDurationMillis) {
+                endAnimation();
+                if (recorder != null) {
+                    recorder.record(EventRecorder.TYPE_ANIMATION_ENDED, view.getId(), 0, value);
+                }
+                return;
+            }
+            float fraction = animationInterpolator.getInterpolation(elapsedMillis / (float) animationDurationMillis);
+            animatedValue = animationStartValue + (value - animationStartValue) * fraction;
+        }
+
+        private void endAnimation() {
+            animating = false;
+            animatingCount--;
+            animationInterpolator = null;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import android.view.View;
+
+import com.google.android.material.appbar.AppBarLayout;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * {@link com.google.android.material.appbar.AppBarLayout.OnOffsetChangedListener} implementation
+ * that reacts on offset changes by translating a view towards the bottom. The view gets displaced
+ * such that when the AppBarLayout is completely collapsed, then the top of the view is at the bottom
+ * of the parent view (typically a {@link androidx.coordinatorlayout.widget.CoordinatorLayout}). For
+ * intermediate states, the fraction of the view displacement respective to this total is relative to
+ * the fraction of the AppBarLayout collapse.
+ * <p/>
+ * Works for any view at the bottom of the screen: FABs, bottom navigation bars, bottom toolbars, mini players.
+ * Meant for wiring up a single view by hand; {@link AppBarSyncedBehavior} instead binds its view to
+ * the one {@link OffsetDispatcher} shared by all views of the AppBarLayout.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ViewOffsetter implements AppBarLayout.OnOffsetChangedListener {
+
+    private final View parent;
+    private final View view;
+
+    // the part of translationY on the view that comes from this offsetter, composed with all other parts
+    private final TranslationRegistry.Component translation;
+
+    private SyncMetrics metrics;
+    private EventRecorder recorder;
+
+    public ViewOffsetter(@NonNull View parent, @NonNull View child) {
+        this.parent = parent;
+        this.view = child;
+        this.translation = TranslationRegistry.of(child).getComponent(TranslationRegistry.COMPONENT_APP_BAR);
+    }
+
+    /**
+     * Opt in to performance metrics for the offset events handled by this offsetter; pass null to opt out.
+     */
+    public void setMetrics(@Nullable SyncMetrics metrics) {
+        this.metrics = metrics;
+        translation.getRegistry().setMetrics(metrics);
+    }
+
+    /**
+     * Opt in to recording the offset events handled by this offsetter and the translations written; pass
+     * null to opt out.
+     */
+    public void setEventRecorder(@Nullable EventRecorder recorder) {
+        this.recorder = recorder;
+        translation.getRegistry().setEventRecorder(recorder);
+    }
+
+    @Override
+    public void onOffsetChanged(AppBarLayout appBarLayout, int verticalOffset) {
+        if (!SyncTrace.enabled) {
+            offset(appBarLayout, verticalOffset);
+            return;
+        }
+        SyncTrace.beginSection(SyncTrace.SECTION_OFFSET_CHANGED);
+        try {
+            offset(appBarLayout, verticalOffset);
+        } finally {
+            SyncTrace.endSection();
+        }
+    }
+
+    private void offset(AppBarLayout appBarLayout, int verticalOffset) {
+        final SyncMetrics metrics = this.metrics;
+        final long startNanos = metrics != null ? System.nanoTime() : 0L;
+
+        // view should scroll out down in sync with the appBarLayout scrolling out up.
+        // let's see how far along the way the appBarLayout is
+        float displacementFraction = Displacement.collapseFraction(verticalOffset, appBarLayout.getTotalScrollRange());
+
+        if (recorder != null) {
+            recorder.record(EventRecorder.TYPE_OFFSET_CHANGED, appBarLayout.getId(), verticalOffset,
+                    appBarLayout.getTotalScrollRange());
+        }
+
+        // total length to displace by (from position uninfluenced by this offsetter) for a full appBar collapse
+        float fullDisplacement = Displacement.fullDisplacement(parent.getBottom(), view.getTop(),
+                translation.getRegistry().getTranslationY(), translation.getValue());
+
+        // calculate new value for displacement coming from this offsetter; the registry composes it
+        // with all other parts and writes the sum
+        translation.setValue(Displacement.translationYByThis(fullDisplacement, displacementFraction));
+
+        if (metrics != null) {
+            metrics.recordOffsetEvent(startNanos, System.nanoTime());
+        }
+    }
+}
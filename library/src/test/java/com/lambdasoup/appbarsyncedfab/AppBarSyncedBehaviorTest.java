@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import android.os.Bundle;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import com.google.android.material.appbar.AppBarLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.LooperMode;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.List;
+
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Binding and unbinding over the lifecycle of the views: screens replaced by fragment transactions
+ * and recreated by configuration changes leave nothing behind on their AppBarLayout, and nothing
+ * keeps their views - neither the window, nor the offset dispatchers kept with the AppBarLayouts.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class AppBarSyncedBehaviorTest {
+
+    private static final int ID_CONTAINER = 100;
+    // full collections until unreachable views are gone; more than enough in practice
+    private static final int MAX_GC_RUNS = 10;
+
+    @Test
+    public void fragmentReplaced_oldViewsReleased() {
+        ActivityController<SyncedActivity> controller = Robolectric.buildActivity(SyncedActivity.class).setup();
+        idle();
+        SyncedScreen oldScreen = SyncedScreen.of(controller.get().getWindow().getDecorView());
+        oldScreen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 2);
+        AppBarLayout oldAppBarLayout = oldScreen.appBarLayout;
+
+        controller.get().getSupportFragmentManager().beginTransaction()
+                .replace(ID_CONTAINER, new SyncedFragment())
+                .commitNow();
+        idle();
+        assertEquals(0, offsetListenerCount(oldAppBarLayout));
+        assertReleased(oldAppBarLayout);
+
+        SyncedScreen screen = SyncedScreen.of(controller.get().getWindow().getDecorView());
+        assertNotSame(oldAppBarLayout, screen.appBarLayout);
+        assertEquals(1, offsetListenerCount(screen.appBarLayout));
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 2);
+        assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                SyncedScreen.MAX_TRANSLATION_ERROR);
+
+        WeakReference<View> oldCoordinatorLayout = new WeakReference<View>(oldScreen.coordinatorLayout);
+        WeakReference<View> oldFab = new WeakReference<View>(oldScreen.fab);
+        oldScreen = null;
+        oldAppBarLayout = null;
+        assertCollected(oldCoordinatorLayout);
+        assertCollected(oldFab);
+    }
+
+    @Test
+    public void recreated_oldViewsReleasedAndDisplacementKept() {
+        ActivityController<SyncedActivity> controller = Robolectric.buildActivity(SyncedActivity.class).setup();
+        idle();
+        SyncedScreen oldScreen = SyncedScreen.of(controller.get().getWindow().getDecorView());
+        oldScreen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 2);
+        float translationY = oldScreen.fab.getTranslationY();
+        AppBarLayout oldAppBarLayout = oldScreen.appBarLayout;
+        WeakReference<FragmentActivity> oldActivity = new WeakReference<FragmentActivity>(controller.get());
+
+        controller.recreate();
+        idle();
+        assertEquals(0, offsetListenerCount(oldAppBarLayout));
+        assertReleased(oldAppBarLayout);
+
+        SyncedScreen screen = SyncedScreen.of(controller.get().getWindow().getDecorView());
+        assertNotSame(oldAppBarLayout, screen.appBarLayout);
+        assertEquals(1, offsetListenerCount(screen.appBarLayout));
+        assertEquals(translationY, screen.fab.getTranslationY(), SyncedScreen.MAX_TRANSLATION_ERROR);
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 4);
+        assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                SyncedScreen.MAX_TRANSLATION_ERROR);
+
+        WeakReference<View> oldFab = new WeakReference<View>(oldScreen.fab);
+        oldScreen = null;
+        oldAppBarLayout = null;
+        assertCollected(oldFab);
+        assertCollected(oldActivity);
+    }
+
+    @Test
+    public void pageDetachedAndAttachedAgain_dispatcherOfItsAppBarLayoutReused() {
+        SyncedScreen screen = SyncedScreen.launch();
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 2);
+        Object dispatcher = screen.appBarLayout.getTag(R.id.appbarsyncedfab_offset_dispatcher);
+
+        // like a page of a pager going off screen and coming back
+        ViewGroup container = (ViewGroup) screen.coordinatorLayout.getParent();
+        container.removeView(screen.coordinatorLayout);
+        idle();
+        assertEquals(0, offsetListenerCount(screen.appBarLayout));
+        assertReleased(screen.appBarLayout);
+
+        container.addView(screen.coordinatorLayout);
+        idle();
+        assertSame(dispatcher, screen.appBarLayout.getTag(R.id.appbarsyncedfab_offset_dispatcher));
+        assertEquals(1, offsetListenerCount(screen.appBarLayout));
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 4);
+        assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                SyncedScreen.MAX_TRANSLATION_ERROR);
+    }
+
+    @Test
+    public void screensComingAndGoing_oldViewsReleased() {
+        ActivityController<SyncedActivity> controller = Robolectric.buildActivity(SyncedActivity.class).setup();
+        idle();
+        // each with an AppBarLayout and an offset dispatcher of its own
+        WeakReference<?>[] oldFabs = new WeakReference<?>[8];
+        for (int i = 0; i < oldFabs.length; i++) {
+            oldFabs[i] = scrollAndReplace(controller);
+        }
+
+        for (WeakReference<?> oldFab : oldFabs) {
+            assertCollected(oldFab);
+        }
+    }
+
+    // a local of its own, so that nothing but the returned reference is left of the replaced FAB
+    private static WeakReference<View> scrollAndReplace(ActivityController<SyncedActivity> controller) {
+        SyncedScreen screen = SyncedScreen.of(controller.get().getWindow().getDecorView());
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 2);
+        WeakReference<View> fab = new WeakReference<View>(screen.fab);
+        controller.get().getSupportFragmentManager().beginTransaction()
+                .replace(ID_CONTAINER, new SyncedFragment())
+                .commitNow();
+        idle();
+        return fab;
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    // OnOffsetChangedListeners registered on the AppBarLayout; there is no public API to count them
+    private static int offsetListenerCount(AppBarLayout appBarLayout) {
+        try {
+            Field field = AppBarLayout.class.getDeclaredField("listeners");
+            field.setAccessible(true);
+            List<?> listeners = (List<?>) field.get(appBarLayout);
+            return listeners == null ? 0 : listeners.size();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    // all a released dispatcher leaves behind on its AppBarLayout is itself, without any bound views
+    private static void assertReleased(AppBarLayout appBarLayout) {
+        Object tag = appBarLayout.getTag(R.id.appbarsyncedfab_offset_dispatcher);
+        assertTrue(tag instanceof OffsetDispatcher);
+        assertTrue(((OffsetDispatcher) tag).isEmpty());
+    }
+
+    private static void assertCollected(WeakReference<?> reference) {
+        for (int i = 0; i < MAX_GC_RUNS && reference.get() != null; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        assertNull(reference.get());
+    }
+
+    /**
+     * Activity showing a {@link SyncedFragment}, in a container for fragment transactions.
+     */
+    public static class SyncedActivity extends FragmentActivity {
+
+        @Override
+        protected void onCreate(Bundle savedInstanceState) {
+            super.onCreate(savedInstanceState);
+            FrameLayout container = new FrameLayout(this);
+            container.setId(ID_CONTAINER);
+            setContentView(container);
+            if (savedInstanceState == null) {
+                getSupportFragmentManager().beginTransaction()
+                        .add(ID_CONTAINER, new SyncedFragment())
+                        .commitNow();
+            }
+        }
+    }
+
+    /**
+     * Fragment with the views of a {@link SyncedScreen}.
+     */
+    public static class SyncedFragment extends Fragment {
+
+        @Override
+        public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+            return SyncedScreen.createViews(inflater.getContext());
+        }
+    }
+}
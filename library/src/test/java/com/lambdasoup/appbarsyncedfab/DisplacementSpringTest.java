@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Time stepped by hand, in frames of fixed length; no Android needed.
+ */
+public class DisplacementSpringTest {
+
+    private static final float OMEGA = 22.0f;
+    private static final float FRAME_SECONDS = 1.0f / 60.0f;
+    // from a hundred pixels away down to half a pixel and below the rest velocity takes about 8 / omega
+    // seconds; half a second is plenty
+    private static final int SETTLE_FRAMES = 30;
+    private static final float TARGET = -100.0f;
+
+    private DisplacementSpring spring;
+
+    @Before
+    public void setUp() {
+        spring = new DisplacementSpring(OMEGA);
+        spring.snapTo(0.0f);
+        assertTrue(spring.isAtRest());
+    }
+
+    @Test
+    public void fromRest_settlesAtTargetWithoutOvershooting() {
+        spring.setTarget(TARGET);
+
+        float position = spring.getPosition();
+        int frames = 0;
+        while (!spring.isAtRest()) {
+            assertTrue("settled after " + frames + " frames", frames < SETTLE_FRAMES);
+            spring.step(FRAME_SECONDS);
+            frames++;
+            // critically damped: on its way there, never past it
+            assertTrue(spring.getPosition() <= position);
+            assertTrue(spring.getPosition() >= TARGET);
+            position = spring.getPosition();
+        }
+        assertEquals(TARGET, spring.getPosition(), 0.0f);
+        assertEquals(0.0f, spring.getVelocity(), 0.0f);
+    }
+
+    @Test
+    public void retargetedMidFlight_continuesWithItsVelocityAndSettlesAtTheNewTarget() {
+        spring.setTarget(TARGET);
+        frames(3);
+        float position = spring.getPosition();
+        float velocity = spring.getVelocity();
+        assertTrue(velocity < 0.0f);
+
+        spring.setTarget(0.0f);
+        assertEquals(position, spring.getPosition(), 0.0f);
+        assertEquals(velocity, spring.getVelocity(), 0.0f);
+
+        // bends towards the new target instead of jumping or starting from standstill
+        spring.step(FRAME_SECONDS);
+        assertTrue(spring.getPosition() < position);
+        assertTrue(position - spring.getPosition() < -velocity * FRAME_SECONDS);
+        assertTrue(spring.getVelocity() > velocity);
+
+        frames(2 * SETTLE_FRAMES);
+        assertTrue(spring.isAtRest());
+        assertEquals(0.0f, spring.getPosition(), 0.0f);
+    }
+
+    @Test
+    public void retargetedEveryFrame_settlesAtTheLastTarget() {
+        for (int i = 0; i < SETTLE_FRAMES; i++) {
+            spring.setTarget(i % 2 == 0 ? TARGET : TARGET / 2);
+            spring.step(FRAME_SECONDS);
+        }
+        spring.setTarget(TARGET);
+        frames(2 * SETTLE_FRAMES);
+        assertTrue(spring.isAtRest());
+        assertEquals(TARGET, spring.getPosition(), 0.0f);
+    }
+
+    @Test
+    public void steps_exactForAnyFrameLength() {
+        DisplacementSpring other = new DisplacementSpring(OMEGA);
+        other.snapTo(0.0f);
+        spring.setTarget(TARGET);
+        other.setTarget(TARGET);
+
+        frames(4);
+        other.step(4 * FRAME_SECONDS);
+        assertEquals(other.getPosition(), spring.getPosition(), 0.01f);
+        assertEquals(other.getVelocity(), spring.getVelocity(), 0.1f);
+    }
+
+    @Test
+    public void sameSteps_samePositions() {
+        DisplacementSpring other = new DisplacementSpring(OMEGA);
+        other.snapTo(0.0f);
+        spring.setTarget(TARGET);
+        other.setTarget(TARGET);
+
+        for (int i = 0; i < SETTLE_FRAMES; i++) {
+            spring.step(FRAME_SECONDS);
+            other.step(FRAME_SECONDS);
+            assertEquals(other.getPosition(), spring.getPosition(), 0.0f);
+            assertEquals(other.getVelocity(), spring.getVelocity(), 0.0f);
+        }
+    }
+
+    @Test
+    public void atRestOrNoTimePassed_stepDoesNothing() {
+        spring.step(FRAME_SECONDS);
+        assertTrue(spring.isAtRest());
+        assertEquals(0.0f, spring.getPosition(), 0.0f);
+
+        spring.setTarget(TARGET);
+        spring.step(0.0f);
+        assertFalse(spring.isAtRest());
+        assertEquals(0.0f, spring.getPosition(), 0.0f);
+    }
+
+    @Test
+    public void snapped_atRestWithoutVelocity() {
+        spring.setTarget(TARGET);
+        frames(3);
+        assertFalse(spring.isAtRest());
+
+        spring.snapTo(TARGET / 2);
+        assertTrue(spring.isAtRest());
+        assertEquals(TARGET / 2, spring.getPosition(), 0.0f);
+        assertEquals(0.0f, spring.getVelocity(), 0.0f);
+    }
+
+    private void frames(int count) {
+        for (int i = 0; i < count; i++) {
+            spring.step(FRAME_SECONDS);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.LooperMode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Dumps of recorded scenarios read back and replayed: the offsets of a dump, fed to a fresh screen,
+ * give the same translation writes as recorded.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class EventRecorderTest {
+
+    private static final int CAPACITY = 1024;
+    // a drag back and forth, with uneven steps and over both ends of the scroll range
+    private static final int[] SCROLL_SCRIPT = {3, 7, 12, -5, 20, 1, -9, 30, 40, -2, 25, -60, 80, 100,
+            -150, 9, -30, 4, 4, 4, 50, -8, 200, -1, -300, 17};
+
+    private SyncedScreen screen;
+    private EventRecorder recorder;
+
+    @Before
+    public void setUp() {
+        screen = SyncedScreen.launch();
+        recorder = new EventRecorder(CAPACITY);
+        screen.behavior.setEventRecorder(recorder);
+    }
+
+    @Test
+    public void dump_readsBackTheSameEvents() throws IOException {
+        for (int dy : SCROLL_SCRIPT) {
+            screen.scrollBy(dy);
+        }
+
+        EventRecorder dump = writeAndReadBack(recorder);
+        assertEquals(recorder.size(), dump.size());
+        for (int i = 0; i < recorder.size(); i++) {
+            assertEquals(recorder.getTimeNanos(i), dump.getTimeNanos(i));
+            assertEquals(recorder.getType(i), dump.getType(i));
+            assertEquals(recorder.getViewId(i), dump.getViewId(i));
+            assertEquals(recorder.getArgument(i), dump.getArgument(i));
+            assertEquals(recorder.getValue(i), dump.getValue(i), 0.0f);
+        }
+    }
+
+    @Test
+    public void dumpReplayedOnFreshScreen_writesTheSameTranslations() throws IOException {
+        for (int dy : SCROLL_SCRIPT) {
+            screen.scrollBy(dy);
+        }
+        EventRecorder dump = writeAndReadBack(recorder);
+
+        SyncedScreen replayScreen = SyncedScreen.launch();
+        EventRecorder replayRecorder = new EventRecorder(CAPACITY);
+        replayScreen.behavior.setEventRecorder(replayRecorder);
+        for (int i = 0; i < dump.size(); i++) {
+            if (dump.getType(i) == EventRecorder.TYPE_OFFSET_CHANGED) {
+                replayScreen.scrollBy(replayScreen.appBarBehavior().getTopAndBottomOffset() - dump.getArgument(i));
+            }
+        }
+
+        float[] written = writtenTranslations(dump);
+        assertTrue(written.length > SCROLL_SCRIPT.length / 2);
+        assertArrayEquals(written, writtenTranslations(replayRecorder), 0.0f);
+        assertEquals(screen.fab.getTranslationY(), replayScreen.fab.getTranslationY(), 0.0f);
+    }
+
+    private static EventRecorder writeAndReadBack(EventRecorder recorder) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        recorder.writeTo(out);
+        return EventRecorder.readFrom(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private static float[] writtenTranslations(EventRecorder recorder) {
+        int count = 0;
+        for (int i = 0; i < recorder.size(); i++) {
+            if (recorder.getType(i) == EventRecorder.TYPE_TRANSLATION_WRITTEN) {
+                count++;
+            }
+        }
+        float[] translations = new float[count];
+        count = 0;
+        for (int i = 0; i < recorder.size(); i++) {
+            if (recorder.getType(i) == EventRecorder.TYPE_TRANSLATION_WRITTEN) {
+                assertEquals(SyncedScreen.ID_FAB, recorder.getViewId(i));
+                translations[count++] = recorder.getValue(i);
+            }
+        }
+        return translations;
+    }
+}
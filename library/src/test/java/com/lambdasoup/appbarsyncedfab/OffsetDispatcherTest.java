@@ -0,0 +1,302 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+
+import com.google.android.material.appbar.AppBarLayout;
+import com.google.android.material.floatingactionbutton.FloatingActionButton;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * The displacement of a FAB through relayouts and moves of the views involved: it always goes from
+ * where the FAB is now to the bottom of where its parent is now, for the scroll range the
+ * AppBarLayout has now, already on the first draw after a relayout. And at lower quality levels, the
+ * FAB follows less closely.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class OffsetDispatcherTest {
+
+    // long enough for an animation of the translation to end
+    private static final int ANIMATION_FRAMES = 20;
+
+    private SyncedScreen screen;
+
+    @Before
+    public void setUp() {
+        screen = SyncedScreen.launch();
+    }
+
+    @Test
+    public void fabMovedWithoutLayout_displacedFromWhereItIsNowByTheNextFrame() {
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 2);
+        // like a dodge of inset edges does
+        screen.fab.offsetTopAndBottom(-20);
+
+        // the AppBarLayout moving is a dependency change, picked up in the pre-draw of the frame
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 4);
+        screen.frame();
+        assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                SyncedScreen.MAX_TRANSLATION_ERROR);
+
+        collapseFully();
+        assertEquals(screen.coordinatorLayout.getHeight(), screen.fab.getTop() + screen.fab.getTranslationY(), 0.0f);
+    }
+
+    @Test
+    public void parentResized_displacedToItsNewBottom() {
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 2);
+        int height = screen.coordinatorLayout.getHeight();
+
+        // like the keyboard coming up with adjustResize
+        ViewGroup.LayoutParams params = screen.coordinatorLayout.getLayoutParams();
+        params.height = height / 2;
+        screen.coordinatorLayout.setLayoutParams(params);
+        layOut();
+        assertEquals(height / 2, screen.coordinatorLayout.getHeight());
+        assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                SyncedScreen.MAX_TRANSLATION_ERROR);
+
+        collapseFully();
+        assertEquals(height / 2, screen.fab.getTop() + screen.fab.getTranslationY(), 0.0f);
+    }
+
+    @Test
+    public void fabSizeChanged_displacedFromItsNewTop() {
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 2);
+        int top = screen.fab.getTop();
+
+        screen.fab.setSize(FloatingActionButton.SIZE_MINI);
+        layOut();
+        assertNotEquals(top, screen.fab.getTop());
+        // right after the layout, without waiting for the next offset event
+        assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                SyncedScreen.MAX_TRANSLATION_ERROR);
+
+        collapseFully();
+        assertEquals(screen.coordinatorLayout.getHeight(), screen.fab.getTop() + screen.fab.getTranslationY(), 0.0f);
+    }
+
+    @Test
+    public void fabGone_untouchedUntilShownAgain() {
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 4);
+        float translationY = screen.fab.getTranslationY();
+
+        screen.fab.setVisibility(View.GONE);
+        layOut();
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 2);
+        assertEquals(translationY, screen.fab.getTranslationY(), 0.0f);
+
+        screen.fab.setVisibility(View.VISIBLE);
+        layOut();
+        assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                SyncedScreen.MAX_TRANSLATION_ERROR);
+    }
+
+    @Test
+    public void appBarChildAdded_followsTheNewScrollRange() {
+        collapseFully();
+
+        View banner = addAppBarChild();
+        layOut();
+        assertEquals(2 * SyncedScreen.TOOLBAR_HEIGHT, screen.appBarLayout.getTotalScrollRange());
+        assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                SyncedScreen.MAX_TRANSLATION_ERROR);
+
+        collapseFully();
+        assertEquals(screen.coordinatorLayout.getHeight(), screen.fab.getTop() + screen.fab.getTranslationY(), 0.0f);
+
+        screen.appBarLayout.removeView(banner);
+        layOut();
+        assertEquals(SyncedScreen.TOOLBAR_HEIGHT, screen.appBarLayout.getTotalScrollRange());
+        assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                SyncedScreen.MAX_TRANSLATION_ERROR);
+    }
+
+    @Test
+    public void appBarChildRemoved_followsTheNewScrollRange() {
+        View banner = addAppBarChild();
+        layOut();
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 2);
+
+        screen.appBarLayout.removeView(banner);
+        layOut();
+        assertEquals(SyncedScreen.TOOLBAR_HEIGHT, screen.appBarLayout.getTotalScrollRange());
+        assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                SyncedScreen.MAX_TRANSLATION_ERROR);
+
+        collapseFully();
+        assertEquals(screen.coordinatorLayout.getHeight(), screen.fab.getTop() + screen.fab.getTranslationY(), 0.0f);
+    }
+
+    @Test
+    public void toolbarResized_displacedOnFirstPreDraw() {
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 2);
+
+        ViewGroup.LayoutParams params = screen.toolbar.getLayoutParams();
+        params.height = 2 * SyncedScreen.TOOLBAR_HEIGHT;
+        screen.toolbar.setLayoutParams(params);
+        assertDisplacedOnFirstPreDraw();
+        assertEquals(2 * SyncedScreen.TOOLBAR_HEIGHT, screen.appBarLayout.getTotalScrollRange());
+    }
+
+    @Test
+    public void appBarChildAdded_displacedOnFirstPreDraw() {
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 2);
+
+        addAppBarChild();
+        assertDisplacedOnFirstPreDraw();
+        assertEquals(2 * SyncedScreen.TOOLBAR_HEIGHT, screen.appBarLayout.getTotalScrollRange());
+    }
+
+    @Test
+    public void parentResized_displacedOnFirstPreDraw() {
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 2);
+        int height = screen.coordinatorLayout.getHeight();
+
+        ViewGroup.LayoutParams params = screen.coordinatorLayout.getLayoutParams();
+        params.height = height / 2;
+        screen.coordinatorLayout.setLayoutParams(params);
+        assertDisplacedOnFirstPreDraw();
+        assertEquals(height / 2, screen.coordinatorLayout.getHeight());
+    }
+
+    @Test
+    public void fabSizeChanged_displacedOnFirstPreDraw() {
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 2);
+        int top = screen.fab.getTop();
+
+        screen.fab.setSize(FloatingActionButton.SIZE_MINI);
+        assertDisplacedOnFirstPreDraw();
+        assertNotEquals(top, screen.fab.getTop());
+    }
+
+    @Test
+    public void reducedLevel_followsEveryOtherOffsetEventAndCatchesUpAtRest() {
+        // frames of the looper are a millisecond apart, way over this budget
+        QualityGovernor governor = new QualityGovernor(100000L, 1.5f, 1.1f, 4, 1000);
+        screen.behavior.setQualityGovernor(governor);
+        for (int i = 0; i < 20 && governor.getLevel() == QualityGovernor.LEVEL_CONTINUOUS; i++) {
+            screen.scrollBy(1);
+            shadowOf(Looper.getMainLooper()).idleFor(1, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(QualityGovernor.LEVEL_REDUCED, governor.getLevel());
+
+        int writes = screen.fab.translationWrites;
+        for (int i = 0; i < 10; i++) {
+            screen.scrollBy(6);
+        }
+        assertEquals(writes + 5, screen.fab.translationWrites);
+        assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                SyncedScreen.MAX_TRANSLATION_ERROR);
+
+        // skipped, and the last one before coming to rest
+        screen.scrollBy(6);
+        assertEquals(writes + 5, screen.fab.translationWrites);
+        screen.frames(2);
+        assertEquals(QualityGovernor.LEVEL_REDUCED, governor.getLevel());
+        assertEquals(writes + 6, screen.fab.translationWrites);
+        assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                SyncedScreen.MAX_TRANSLATION_ERROR);
+    }
+
+    @Test
+    public void powerSaveMode_hidesAndShowsAtThresholdsOnly() {
+        PowerManager powerManager = (PowerManager) screen.appBarLayout.getContext()
+                .getSystemService(Context.POWER_SERVICE);
+        shadowOf(powerManager).setIsPowerSaveMode(true);
+        screen.behavior.setQualityGovernor(new QualityGovernor());
+
+        // noticed with the first offset event, which still got followed; that gets taken back
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 4);
+        screen.frames(ANIMATION_FRAMES);
+        assertEquals(0.0f, screen.fab.getTranslationY(), 0.0f);
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 4);
+        screen.frames(ANIMATION_FRAMES);
+        assertEquals(0.0f, screen.fab.getTranslationY(), 0.0f);
+
+        // past the hide threshold
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 4);
+        screen.frames(ANIMATION_FRAMES);
+        assertEquals(screen.coordinatorLayout.getHeight(), screen.fab.getTop() + screen.fab.getTranslationY(), 0.0f);
+
+        // noticed with the next movement: back to following the collapse, from where the FAB is
+        shadowOf(powerManager).setIsPowerSaveMode(false);
+        screen.scrollBy(-SyncedScreen.TOOLBAR_HEIGHT / 4);
+        screen.frames(ANIMATION_FRAMES);
+        assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                SyncedScreen.MAX_TRANSLATION_ERROR);
+    }
+
+    private View addAppBarChild() {
+        View banner = new View(screen.appBarLayout.getContext());
+        AppBarLayout.LayoutParams params = new AppBarLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, SyncedScreen.TOOLBAR_HEIGHT);
+        params.setScrollFlags(AppBarLayout.LayoutParams.SCROLL_FLAG_SCROLL
+                | AppBarLayout.LayoutParams.SCROLL_FLAG_ENTER_ALWAYS);
+        screen.appBarLayout.addView(banner, params);
+        return banner;
+    }
+
+    // runs the traversal of a relayout, and checks the translation as of its pre-draw: what the
+    // first draw after the relayout shows. With immediate writes, all of them are done by then.
+    private void assertDisplacedOnFirstPreDraw() {
+        final float[] atPreDraw = new float[2];
+        final int[] preDraws = new int[1];
+        final ViewTreeObserver observer = screen.coordinatorLayout.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if (preDraws[0]++ == 0) {
+                    atPreDraw[0] = screen.expectedAppBarTranslationY(0.0f);
+                    atPreDraw[1] = screen.fab.getTranslationY();
+                }
+                return true;
+            }
+        });
+        layOut();
+
+        assertNotEquals(0, preDraws[0]);
+        assertNotEquals(0.0f, atPreDraw[0], 0.0f);
+        assertEquals(atPreDraw[0], atPreDraw[1], SyncedScreen.MAX_TRANSLATION_ERROR);
+    }
+
+    private void collapseFully() {
+        screen.scrollBy(screen.appBarLayout.getTotalScrollRange());
+    }
+
+    private void layOut() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
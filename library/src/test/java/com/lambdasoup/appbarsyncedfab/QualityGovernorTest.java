@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Frame times fed in by hand; no Android needed.
+ */
+public class QualityGovernorTest {
+
+    private static final long BUDGET_NANOS = 16000000L;
+    private static final long LONG_FRAME_NANOS = 2 * BUDGET_NANOS;
+    private static final long SMOOTH_FRAME_NANOS = BUDGET_NANOS;
+    // between 1.1 and 1.5 times the budget: neither long nor smooth
+    private static final long IN_BETWEEN_FRAME_NANOS = 13 * BUDGET_NANOS / 10;
+    private static final long PAUSE_NANOS = 1000000000L;
+    private static final int DEGRADE_FRAMES = 4;
+    private static final int RECOVER_FRAMES = 10;
+
+    private QualityGovernor governor;
+    private long frameTimeNanos;
+
+    @Before
+    public void setUp() {
+        governor = new QualityGovernor(BUDGET_NANOS, 1.5f, 1.1f, DEGRADE_FRAMES, RECOVER_FRAMES);
+        frameTimeNanos = 1000000000L;
+        assertFalse(governor.onFrame(frameTimeNanos));
+    }
+
+    @Test
+    public void longFrames_degradeStepByStep() {
+        assertEquals(QualityGovernor.LEVEL_CONTINUOUS, governor.getLevel());
+
+        assertFalse(frames(DEGRADE_FRAMES - 1, LONG_FRAME_NANOS));
+        assertTrue(frames(1, LONG_FRAME_NANOS));
+        assertEquals(QualityGovernor.LEVEL_REDUCED, governor.getLevel());
+
+        assertFalse(frames(DEGRADE_FRAMES - 1, LONG_FRAME_NANOS));
+        assertTrue(frames(1, LONG_FRAME_NANOS));
+        assertEquals(QualityGovernor.LEVEL_THRESHOLD, governor.getLevel());
+
+        assertFalse(frames(2 * DEGRADE_FRAMES, LONG_FRAME_NANOS));
+        assertEquals(QualityGovernor.LEVEL_THRESHOLD, governor.getLevel());
+    }
+
+    @Test
+    public void smoothFrames_recoverStepByStep() {
+        frames(2 * DEGRADE_FRAMES, LONG_FRAME_NANOS);
+        assertEquals(QualityGovernor.LEVEL_THRESHOLD, governor.getLevel());
+
+        assertFalse(frames(RECOVER_FRAMES - 1, SMOOTH_FRAME_NANOS));
+        assertTrue(frames(1, SMOOTH_FRAME_NANOS));
+        assertEquals(QualityGovernor.LEVEL_REDUCED, governor.getLevel());
+
+        assertFalse(frames(RECOVER_FRAMES - 1, SMOOTH_FRAME_NANOS));
+        assertTrue(frames(1, SMOOTH_FRAME_NANOS));
+        assertEquals(QualityGovernor.LEVEL_CONTINUOUS, governor.getLevel());
+
+        assertFalse(frames(2 * RECOVER_FRAMES, SMOOTH_FRAME_NANOS));
+        assertEquals(QualityGovernor.LEVEL_CONTINUOUS, governor.getLevel());
+    }
+
+    @Test
+    public void longFrame_restartsRecovery() {
+        frames(DEGRADE_FRAMES, LONG_FRAME_NANOS);
+
+        frames(RECOVER_FRAMES - 1, SMOOTH_FRAME_NANOS);
+        frames(1, LONG_FRAME_NANOS);
+        assertFalse(frames(RECOVER_FRAMES - 1, SMOOTH_FRAME_NANOS));
+        assertEquals(QualityGovernor.LEVEL_REDUCED, governor.getLevel());
+        assertTrue(frames(1, SMOOTH_FRAME_NANOS));
+        assertEquals(QualityGovernor.LEVEL_CONTINUOUS, governor.getLevel());
+    }
+
+    @Test
+    public void smoothFrames_takeFromThePressure() {
+        frames(DEGRADE_FRAMES - 1, LONG_FRAME_NANOS);
+        frames(1, SMOOTH_FRAME_NANOS);
+
+        assertFalse(frames(1, LONG_FRAME_NANOS));
+        assertTrue(frames(1, LONG_FRAME_NANOS));
+        assertEquals(QualityGovernor.LEVEL_REDUCED, governor.getLevel());
+    }
+
+    @Test
+    public void framesInBetween_countNeitherWay() {
+        frames(DEGRADE_FRAMES - 1, LONG_FRAME_NANOS);
+        assertFalse(frames(10 * DEGRADE_FRAMES, IN_BETWEEN_FRAME_NANOS));
+        assertTrue(frames(1, LONG_FRAME_NANOS));
+        assertEquals(QualityGovernor.LEVEL_REDUCED, governor.getLevel());
+
+        frames(RECOVER_FRAMES - 1, SMOOTH_FRAME_NANOS);
+        assertFalse(frames(10 * RECOVER_FRAMES, IN_BETWEEN_FRAME_NANOS));
+        assertTrue(frames(1, SMOOTH_FRAME_NANOS));
+        assertEquals(QualityGovernor.LEVEL_CONTINUOUS, governor.getLevel());
+    }
+
+    @Test
+    public void pausesAndRepeatedFrames_notCounted() {
+        for (int i = 0; i < 2 * DEGRADE_FRAMES; i++) {
+            // same frame twice, then a pause instead of a long frame
+            assertFalse(governor.onFrame(frameTimeNanos));
+            assertFalse(frames(1, PAUSE_NANOS));
+        }
+        assertEquals(QualityGovernor.LEVEL_CONTINUOUS, governor.getLevel());
+    }
+
+    @Test
+    public void firstFrameAfterReset_notCounted() {
+        frames(DEGRADE_FRAMES - 1, LONG_FRAME_NANOS);
+
+        governor.resetFrameTime();
+        // would be a long frame, but starts a new series
+        assertFalse(governor.onFrame(frameTimeNanos + LONG_FRAME_NANOS));
+        frameTimeNanos += LONG_FRAME_NANOS;
+        assertEquals(QualityGovernor.LEVEL_CONTINUOUS, governor.getLevel());
+        assertTrue(frames(1, LONG_FRAME_NANOS));
+    }
+
+    @Test
+    public void powerSaveMode_staysAtThreshold() {
+        assertTrue(governor.setPowerSaveMode(true));
+        assertEquals(QualityGovernor.LEVEL_THRESHOLD, governor.getLevel());
+        assertFalse(governor.setPowerSaveMode(true));
+
+        assertFalse(frames(3 * RECOVER_FRAMES, SMOOTH_FRAME_NANOS));
+        assertEquals(QualityGovernor.LEVEL_THRESHOLD, governor.getLevel());
+
+        assertTrue(governor.setPowerSaveMode(false));
+        assertEquals(QualityGovernor.LEVEL_CONTINUOUS, governor.getLevel());
+    }
+
+    @Test
+    public void powerSaveModeOff_backToTheLevelFromFrameTimes() {
+        frames(DEGRADE_FRAMES, LONG_FRAME_NANOS);
+        governor.setPowerSaveMode(true);
+        // still counted while in power save mode
+        frames(RECOVER_FRAMES, SMOOTH_FRAME_NANOS);
+
+        assertTrue(governor.setPowerSaveMode(false));
+        assertEquals(QualityGovernor.LEVEL_CONTINUOUS, governor.getLevel());
+    }
+
+    @Test
+    public void powerSaveModeAtThreshold_noChange() {
+        frames(2 * DEGRADE_FRAMES, LONG_FRAME_NANOS);
+
+        assertFalse(governor.setPowerSaveMode(true));
+        assertFalse(governor.setPowerSaveMode(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void recoverFactorAboveDegradeFactor_rejected() {
+        new QualityGovernor(BUDGET_NANOS, 1.1f, 1.5f, DEGRADE_FRAMES, RECOVER_FRAMES);
+    }
+
+    // feeds in the given number of frames of the given length; returns whether any of them changed the level
+    private boolean frames(int count, long frameNanos) {
+        boolean changed = false;
+        for (int i = 0; i < count; i++) {
+            frameTimeNanos += frameNanos;
+            changed |= governor.onFrame(frameTimeNanos);
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import android.view.View;
+
+import com.google.android.material.snackbar.Snackbar;
+import com.lambdasoup.appbarsyncedfab.testing.Allocations;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.LooperMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays scripts of scrolling and snackbars against a real view hierarchy, and checks where the FAB
+ * ends up, how often its translation gets written, and what the per-frame path allocates.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class SyncScenarioTest {
+
+    // a drag delivering several touch events per frame, in pixels per event
+    private static final int SCROLL_STEP = 5;
+    private static final int EVENTS_PER_FRAME = 3;
+    // long enough for a snackbar to slide in or out and the FAB to settle after it
+    private static final int SNACKBAR_FRAMES = 60;
+
+    private SyncedScreen screen;
+    private int scrollDirection;
+
+    private final Runnable scrollFrame = new Runnable() {
+        @Override
+        public void run() {
+            for (int i = 0; i < EVENTS_PER_FRAME; i++) {
+                screen.scrollBy(scrollDirection * SCROLL_STEP);
+            }
+            screen.dispatchPreDraw();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        screen = SyncedScreen.launch();
+    }
+
+    @Test
+    public void collapseAndExpand_coalesced_writesOncePerFrame() {
+        screen.behavior.setCoalesceTranslationUpdates(true);
+
+        scrollDirection = 1;
+        while (screen.collapseFraction() < 1.0f) {
+            int writes = screen.fab.translationWrites;
+            for (int i = 0; i < EVENTS_PER_FRAME; i++) {
+                screen.scrollBy(SCROLL_STEP);
+            }
+            assertEquals("writes before the frame", writes, screen.fab.translationWrites);
+            screen.frame();
+            assertEquals("writes in the frame", writes + 1, screen.fab.translationWrites);
+            assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                    SyncedScreen.MAX_TRANSLATION_ERROR);
+        }
+        assertEquals(screen.coordinatorLayout.getHeight(), screen.fab.getTop() + screen.fab.getTranslationY(), 0.0f);
+
+        while (screen.collapseFraction() > 0.0f) {
+            int writes = screen.fab.translationWrites;
+            for (int i = 0; i < EVENTS_PER_FRAME; i++) {
+                screen.scrollBy(-SCROLL_STEP);
+            }
+            screen.frame();
+            assertEquals("writes in the frame", writes + 1, screen.fab.translationWrites);
+            assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                    SyncedScreen.MAX_TRANSLATION_ERROR);
+        }
+        assertEquals(0.0f, screen.fab.getTranslationY(), 0.0f);
+    }
+
+    @Test
+    public void collapseAndExpand_immediate_writesAtMostOncePerEvent() {
+        screen.behavior.setCoalesceTranslationUpdates(false);
+
+        while (screen.collapseFraction() < 1.0f) {
+            int writes = screen.fab.translationWrites;
+            screen.scrollBy(SCROLL_STEP);
+            assertTrue("writes for one event", screen.fab.translationWrites - writes <= 1);
+            assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                    SyncedScreen.MAX_TRANSLATION_ERROR);
+        }
+        assertEquals(screen.coordinatorLayout.getHeight(), screen.fab.getTop() + screen.fab.getTranslationY(), 0.0f);
+
+        while (screen.collapseFraction() > 0.0f) {
+            int writes = screen.fab.translationWrites;
+            screen.scrollBy(-SCROLL_STEP);
+            assertTrue("writes for one event", screen.fab.translationWrites - writes <= 1);
+            assertEquals(screen.expectedAppBarTranslationY(0.0f), screen.fab.getTranslationY(),
+                    SyncedScreen.MAX_TRANSLATION_ERROR);
+        }
+        assertEquals(0.0f, screen.fab.getTranslationY(), 0.0f);
+    }
+
+    @Test
+    public void snackbarShownAndDismissed_fabMovesOutOfTheWayAndBack() {
+        screen.behavior.setCoalesceTranslationUpdates(true);
+        Snackbar snackbar = Snackbar.make(screen.coordinatorLayout, "Snackbar", Snackbar.LENGTH_INDEFINITE);
+
+        snackbar.show();
+        runSnackbarFrames();
+        View snackbarView = snackbar.getView();
+        assertEquals(0.0f, snackbarView.getTranslationY(), 0.0f);
+        assertEquals(-snackbarView.getHeight(), screen.fab.getTranslationY(), SyncedScreen.MAX_TRANSLATION_ERROR);
+        assertEquals(0.0f, screen.appBarTranslationY(), 0.0f);
+
+        snackbar.dismiss();
+        runSnackbarFrames();
+        assertNull(snackbarView.getParent());
+        assertEquals(0.0f, screen.fab.getTranslationY(), 0.0f);
+    }
+
+    @Test
+    public void collapseWithSnackbar_fabGoesOutOfViewFromAboveTheSnackbar() {
+        screen.behavior.setCoalesceTranslationUpdates(true);
+        Snackbar snackbar = Snackbar.make(screen.coordinatorLayout, "Snackbar", Snackbar.LENGTH_INDEFINITE);
+        snackbar.show();
+        runSnackbarFrames();
+        float obstructionTranslationY = screen.obstructionTranslationY();
+
+        while (screen.collapseFraction() < 1.0f) {
+            int writes = screen.fab.translationWrites;
+            for (int i = 0; i < EVENTS_PER_FRAME; i++) {
+                screen.scrollBy(SCROLL_STEP);
+            }
+            screen.frame();
+            assertEquals("writes in the frame", writes + 1, screen.fab.translationWrites);
+            assertEquals(screen.expectedAppBarTranslationY(obstructionTranslationY), screen.appBarTranslationY(),
+                    SyncedScreen.MAX_TRANSLATION_ERROR);
+        }
+        assertEquals(obstructionTranslationY, screen.obstructionTranslationY(), 0.0f);
+        assertEquals(screen.coordinatorLayout.getHeight(), screen.fab.getTop() + screen.fab.getTranslationY(),
+                SyncedScreen.MAX_TRANSLATION_ERROR);
+    }
+
+    @Test
+    public void collapseAndExpand_coalesced_allocatesNothingPerFrame() {
+        screen.behavior.setCoalesceTranslationUpdates(true);
+        // classes loaded, lazily created objects there, and the frame callbacks of the looper pooled
+        for (int i = 0; i < 3; i++) {
+            scrollThrough(1, false);
+            scrollThrough(-1, false);
+        }
+
+        scrollThrough(1, true);
+        scrollThrough(-1, true);
+    }
+
+    @Test
+    public void collapseAndExpand_immediate_allocatesNothingPerFrame() {
+        screen.behavior.setCoalesceTranslationUpdates(false);
+        for (int i = 0; i < 3; i++) {
+            scrollThrough(1, false);
+            scrollThrough(-1, false);
+        }
+
+        scrollThrough(1, true);
+        scrollThrough(-1, true);
+    }
+
+    // Scrolls all the way in the given direction, EVENTS_PER_FRAME offset events per frame. Unless
+    // warming up, checks that the events and the pre-draw of each frame allocate nothing at all.
+    private void scrollThrough(int direction, boolean measure) {
+        scrollDirection = direction;
+        while (direction > 0 ? screen.collapseFraction() < 1.0f : screen.collapseFraction() > 0.0f) {
+            if (measure) {
+                assertEquals("bytes allocated in a frame", 0, Allocations.measure(scrollFrame));
+            } else {
+                scrollFrame.run();
+            }
+            screen.runFrameCallbacks();
+        }
+    }
+
+    private void runSnackbarFrames() {
+        screen.frames(SNACKBAR_FRAMES);
+        // the looper runs several animation frames per frame of the screen; count by pre-draw
+        assertEquals("writes per frame", 1, screen.fab.maxTranslationWritesPerFrame);
+    }
+}
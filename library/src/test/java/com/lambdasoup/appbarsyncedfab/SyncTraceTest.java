@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import android.os.Looper;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.google.android.material.snackbar.Snackbar;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLog;
+import org.robolectric.shadows.ShadowTrace;
+
+import java.util.Queue;
+
+import androidx.annotation.NonNull;
+import androidx.coordinatorlayout.widget.CoordinatorLayout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Trace sections of the library always come in pairs: each one begun is ended, on every path - with
+ * tracing turned on or off while a section is open, and with an {@link ObstructionProvider} throwing.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class SyncTraceTest {
+
+    private static final int ID_OBSTRUCTION = 6;
+    private static final int OBSTRUCTION_HEIGHT = 100;
+    // long enough for a snackbar to slide in or out and the FAB to settle after it
+    private static final int SNACKBAR_FRAMES = 60;
+    // ShadowTrace logs an end of a section never begun under this tag, instead of failing
+    private static final String SHADOW_TRACE_TAG = "ShadowTrace";
+
+    private SyncedScreen screen;
+
+    @Before
+    public void setUp() {
+        screen = SyncedScreen.launch();
+        SyncTrace.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        SyncTrace.setEnabled(false);
+    }
+
+    @Test
+    public void scrollRelayoutAndSnackbar_sectionsBalanced() {
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 2);
+        assertBalanced();
+
+        ViewGroup.LayoutParams params = screen.toolbar.getLayoutParams();
+        params.height = 2 * SyncedScreen.TOOLBAR_HEIGHT;
+        screen.toolbar.setLayoutParams(params);
+        layOut();
+        assertBalanced();
+
+        Snackbar snackbar = Snackbar.make(screen.coordinatorLayout, "Snackbar", Snackbar.LENGTH_INDEFINITE);
+        snackbar.show();
+        screen.frames(SNACKBAR_FRAMES);
+        snackbar.dismiss();
+        screen.frames(SNACKBAR_FRAMES);
+        assertBalanced();
+
+        Queue<String> sections = ShadowTrace.getPreviousSections();
+        assertTrue(sections.contains(SyncTrace.SECTION_OFFSET_CHANGED));
+        assertTrue(sections.contains(SyncTrace.SECTION_VIEW_LAID_OUT));
+        assertTrue(sections.contains(SyncTrace.SECTION_OBSTRUCTIONS));
+        assertTrue(sections.contains(SyncTrace.SECTION_OBSTRUCTION_HEIGHT));
+    }
+
+    @Test
+    public void toggledWhileSectionsOpen_sectionsBalanced() {
+        final int[] calls = new int[1];
+        screen.behavior.addObstructionProvider(new TestObstructionProvider() {
+            @Override
+            public float getObstructionHeight(@NonNull CoordinatorLayout parent, @NonNull View obstruction) {
+                // on, off, on...: sections begun while on end while off, and the other way round
+                calls[0]++;
+                SyncTrace.setEnabled(!SyncTrace.isEnabled());
+                return super.getObstructionHeight(parent, obstruction);
+            }
+        });
+
+        View obstruction = addObstruction();
+        layOut();
+        for (int i = 0; i < 4; i++) {
+            obstruction.offsetTopAndBottom(i % 2 == 0 ? -10 : 10);
+            screen.frame();
+            assertBalanced();
+        }
+        assertTrue(calls[0] >= 2);
+    }
+
+    @Test
+    public void providerThrowing_sectionsBalanced() {
+        final boolean[] throwing = new boolean[1];
+        screen.behavior.addObstructionProvider(new TestObstructionProvider() {
+            @Override
+            public float getObstructionHeight(@NonNull CoordinatorLayout parent, @NonNull View obstruction) {
+                if (throwing[0]) {
+                    throw new IllegalStateException("provider failed");
+                }
+                return super.getObstructionHeight(parent, obstruction);
+            }
+        });
+        View obstruction = addObstruction();
+        layOut();
+        assertBalanced();
+
+        throwing[0] = true;
+        obstruction.offsetTopAndBottom(-10);
+        try {
+            screen.dispatchPreDraw();
+            fail("provider did not get asked");
+        } catch (IllegalStateException expected) {
+            // thrown through the sections for obstructions
+        }
+        assertBalanced();
+
+        throwing[0] = false;
+        obstruction.offsetTopAndBottom(10);
+        screen.frame();
+        assertBalanced();
+    }
+
+    private View addObstruction() {
+        View obstruction = new View(screen.coordinatorLayout.getContext());
+        obstruction.setId(ID_OBSTRUCTION);
+        CoordinatorLayout.LayoutParams params = new CoordinatorLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, OBSTRUCTION_HEIGHT);
+        params.gravity = Gravity.BOTTOM;
+        screen.coordinatorLayout.addView(obstruction, params);
+        return obstruction;
+    }
+
+    private static void assertBalanced() {
+        assertEquals(0, ShadowTrace.getCurrentSections().size());
+        assertEquals(0, ShadowLog.getLogsForTag(SHADOW_TRACE_TAG).size());
+    }
+
+    private static void layOut() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    /**
+     * Recognizes the view added by {@link #addObstruction()}, which obstructs with all of its height.
+     */
+    private static class TestObstructionProvider implements ObstructionProvider {
+
+        @Override
+        public boolean isObstruction(@NonNull View dependency) {
+            return dependency.getId() == ID_OBSTRUCTION;
+        }
+
+        @Override
+        public float getObstructionHeight(@NonNull CoordinatorLayout parent, @NonNull View obstruction) {
+            return obstruction.getHeight();
+        }
+    }
+}
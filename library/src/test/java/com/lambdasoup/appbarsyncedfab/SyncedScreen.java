@@ -0,0 +1,261 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Looper;
+import android.view.ContextThemeWrapper;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+
+import com.google.android.material.appbar.AppBarLayout;
+import com.google.android.material.floatingactionbutton.FloatingActionButton;
+
+import org.robolectric.Robolectric;
+import org.robolectric.android.controller.ActivityController;
+
+import java.util.concurrent.TimeUnit;
+
+import androidx.coordinatorlayout.widget.CoordinatorLayout;
+import androidx.core.view.ViewCompat;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * A CoordinatorLayout with an AppBarLayout, content scrolling along with it and a FAB synced to it,
+ * for scenario tests on a paused main looper. Scrolling goes through the behavior of the
+ * AppBarLayout, the way nested scrolling of the content moves it.
+ * <p/>
+ * Robolectric does not draw, so views never count as drawn, and invalidating them does not get a
+ * traversal scheduled; {@link #frame()} dispatches the pre-draw of each frame itself, after the
+ * animation callbacks of the frame have run, where ViewRootImpl would. Traversals scheduled by
+ * layout requests dispatch pre-draw as well; the one of the frame then finds nothing left to write.
+ */
+final class SyncedScreen {
+
+    static final int ID_COORDINATOR = 1;
+    static final int ID_APP_BAR = 2;
+    static final int ID_TOOLBAR = 3;
+    static final int ID_CONTENT = 4;
+    static final int ID_FAB = 5;
+
+    // in pixels; tests run at mdpi
+    static final int TOOLBAR_HEIGHT = 168;
+    static final long FRAME_MILLIS = 16;
+    // sub-pixel changes are not written, so the written translation may lag behind by that much
+    static final float MAX_TRANSLATION_ERROR = 0.5f;
+
+    final ActivityController<Activity> controller;
+    final CoordinatorLayout coordinatorLayout;
+    final AppBarLayout appBarLayout;
+    final View toolbar;
+    final View content;
+    final CountingFab fab;
+    final AppBarBoundFabBehavior behavior;
+
+    private final int[] consumed = new int[2];
+
+    private SyncedScreen(ActivityController<Activity> controller, View root) {
+        this.controller = controller;
+        coordinatorLayout = root.findViewById(ID_COORDINATOR);
+        appBarLayout = root.findViewById(ID_APP_BAR);
+        toolbar = root.findViewById(ID_TOOLBAR);
+        content = root.findViewById(ID_CONTENT);
+        fab = root.findViewById(ID_FAB);
+        behavior = (AppBarBoundFabBehavior) ((CoordinatorLayout.LayoutParams) fab.getLayoutParams()).getBehavior();
+        final ViewTreeObserver.OnPreDrawListener frameCounter = new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                fab.frame++;
+                return true;
+            }
+        };
+        // before any listener of the library, so that writes flushed on pre-draw count for the new frame;
+        // off the window again with the views, so that the window does not keep them
+        if (ViewCompat.isAttachedToWindow(coordinatorLayout)) {
+            coordinatorLayout.getViewTreeObserver().addOnPreDrawListener(frameCounter);
+        }
+        coordinatorLayout.addOnAttachStateChangeListener(new View.OnAttachStateChangeListener() {
+            @Override
+            public void onViewAttachedToWindow(View v) {
+                v.getViewTreeObserver().addOnPreDrawListener(frameCounter);
+            }
+
+            @Override
+            public void onViewDetachedFromWindow(View v) {
+                v.getViewTreeObserver().removeOnPreDrawListener(frameCounter);
+            }
+        });
+    }
+
+    /**
+     * Shows a new screen in a new activity, and runs the main looper until it is laid out.
+     */
+    static SyncedScreen launch() {
+        ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class).setup();
+        Activity activity = controller.get();
+        activity.setContentView(createViews(activity));
+        shadowOf(Looper.getMainLooper()).idle();
+        return new SyncedScreen(controller, activity.getWindow().getDecorView());
+    }
+
+    /**
+     * Screen of the views created by {@link #createViews(Context)}, somewhere below the given root.
+     */
+    static SyncedScreen of(View root) {
+        return new SyncedScreen(null, root);
+    }
+
+    /**
+     * Creates the views of a screen, themed for the material library.
+     */
+    static CoordinatorLayout createViews(Context context) {
+        Context themed = new ContextThemeWrapper(context, R.style.Theme_MaterialComponents_Light_NoActionBar);
+
+        CoordinatorLayout coordinatorLayout = new CoordinatorLayout(themed);
+        coordinatorLayout.setId(ID_COORDINATOR);
+
+        AppBarLayout appBarLayout = new AppBarLayout(themed);
+        appBarLayout.setId(ID_APP_BAR);
+        View toolbar = new View(themed);
+        toolbar.setId(ID_TOOLBAR);
+        AppBarLayout.LayoutParams toolbarParams = new AppBarLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, TOOLBAR_HEIGHT);
+        toolbarParams.setScrollFlags(AppBarLayout.LayoutParams.SCROLL_FLAG_SCROLL
+                | AppBarLayout.LayoutParams.SCROLL_FLAG_ENTER_ALWAYS);
+        appBarLayout.addView(toolbar, toolbarParams);
+        coordinatorLayout.addView(appBarLayout, new CoordinatorLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+
+        View content = new View(themed);
+        content.setId(ID_CONTENT);
+        CoordinatorLayout.LayoutParams contentParams = new CoordinatorLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+        contentParams.setBehavior(new AppBarLayout.ScrollingViewBehavior());
+        coordinatorLayout.addView(content, contentParams);
+
+        CountingFab fab = new CountingFab(themed);
+        fab.setId(ID_FAB);
+        CoordinatorLayout.LayoutParams fabParams = new CoordinatorLayout.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+        fabParams.gravity = Gravity.BOTTOM | Gravity.END;
+        fabParams.setBehavior(new AppBarBoundFabBehavior(themed, null));
+        coordinatorLayout.addView(fab, fabParams);
+
+        return coordinatorLayout;
+    }
+
+    AppBarLayout.Behavior appBarBehavior() {
+        return (AppBarLayout.Behavior) ((CoordinatorLayout.LayoutParams) appBarLayout.getLayoutParams()).getBehavior();
+    }
+
+    /**
+     * Moves the AppBarLayout by the given number of pixels, towards collapsed for positive ones, with a
+     * single offset event, the way a touch scroll of the content does.
+     */
+    void scrollBy(int dy) {
+        consumed[0] = 0;
+        consumed[1] = 0;
+        appBarBehavior().onNestedPreScroll(coordinatorLayout, appBarLayout, content, 0, dy, consumed,
+                ViewCompat.TYPE_TOUCH);
+    }
+
+    /**
+     * How far the AppBarLayout is collapsed, from its actual offset.
+     */
+    float collapseFraction() {
+        return -appBarBehavior().getTopAndBottomOffset() / (float) appBarLayout.getTotalScrollRange();
+    }
+
+    /**
+     * Translation the FAB should have from the AppBarLayout: its top goes down to the bottom of the
+     * CoordinatorLayout along with the collapse, from where the given other translation puts it.
+     */
+    float expectedAppBarTranslationY(float otherTranslationY) {
+        return collapseFraction() * (coordinatorLayout.getHeight() - fab.getTop() - otherTranslationY);
+    }
+
+    float appBarTranslationY() {
+        return TranslationRegistry.of(fab).getComponent(TranslationRegistry.COMPONENT_APP_BAR).getValue();
+    }
+
+    float obstructionTranslationY() {
+        return TranslationRegistry.of(fab).getComponent(TranslationRegistry.COMPONENT_OBSTRUCTIONS).getValue();
+    }
+
+    /**
+     * Runs the main looper for one frame, then dispatches the pre-draw of the frame.
+     */
+    void frame() {
+        runFrameCallbacks();
+        dispatchPreDraw();
+    }
+
+    /**
+     * Runs the main looper for one frame: messages, animation callbacks and traversals due by then.
+     */
+    void runFrameCallbacks() {
+        shadowOf(Looper.getMainLooper()).idleFor(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    void dispatchPreDraw() {
+        coordinatorLayout.getViewTreeObserver().dispatchOnPreDraw();
+    }
+
+    void frames(int count) {
+        for (int i = 0; i < count; i++) {
+            frame();
+        }
+    }
+
+    /**
+     * FAB counting the writes of its translation, in total and per frame, and its invalidations. Frames
+     * end with their pre-draw, whether dispatched by {@link #frame()} or by a traversal.
+     */
+    static final class CountingFab extends FloatingActionButton {
+
+        int translationWrites = 0;
+        int maxTranslationWritesPerFrame = 0;
+        int invalidations = 0;
+
+        private int frame = 0;
+        private int frameOfLastWrite = -1;
+        private int writesInFrame = 0;
+
+        CountingFab(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void setTranslationY(float translationY) {
+            translationWrites++;
+            writesInFrame = frame == frameOfLastWrite ? writesInFrame + 1 : 1;
+            frameOfLastWrite = frame;
+            maxTranslationWritesPerFrame = Math.max(maxTranslationWritesPerFrame, writesInFrame);
+            super.setTranslationY(translationY);
+        }
+
+        @Override
+        public void invalidate() {
+            invalidations++;
+            super.invalidate();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.LooperMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Coalesced writes on a paused main looper: however often the components of the FAB change between
+ * two frames, its translation gets written once, on pre-draw, with the sum as of then. And animations:
+ * one of a single component runs without a write per frame, and changes of others are folded in.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class TranslationRegistryTest {
+
+    // long enough for an animation of the default duration to end
+    private static final int ANIMATION_FRAMES = 20;
+
+    private SyncedScreen screen;
+    private TranslationRegistry.Component appBar;
+    private TranslationRegistry.Component other;
+
+    @Before
+    public void setUp() {
+        screen = SyncedScreen.launch();
+        screen.behavior.setCoalesceTranslationUpdates(true);
+        TranslationRegistry registry = TranslationRegistry.of(screen.fab);
+        appBar = registry.getComponent(TranslationRegistry.COMPONENT_APP_BAR);
+        other = registry.getComponent("test:other");
+    }
+
+    @Test
+    public void changesBetweenFrames_writtenOncePerFrame() {
+        for (int frame = 1; frame <= 10; frame++) {
+            int writes = screen.fab.translationWrites;
+            appBar.setValue(frame);
+            other.setValue(2 * frame);
+            appBar.setValue(3 * frame);
+            assertEquals("writes before the frame", writes, screen.fab.translationWrites);
+
+            screen.frame();
+            assertEquals("writes in the frame", writes + 1, screen.fab.translationWrites);
+            assertEquals(5 * frame, screen.fab.getTranslationY(), 0.0f);
+        }
+    }
+
+    @Test
+    public void offsetEventsAndObstructionInOneFrame_writtenOnce() {
+        int writes = screen.fab.translationWrites;
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 4);
+        other.setValue(-10.0f);
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 4);
+
+        screen.frame();
+        assertEquals(writes + 1, screen.fab.translationWrites);
+        assertEquals(screen.appBarTranslationY() - 10.0f, screen.fab.getTranslationY(), 0.0f);
+        assertEquals(screen.expectedAppBarTranslationY(-10.0f), screen.appBarTranslationY(),
+                SyncedScreen.MAX_TRANSLATION_ERROR);
+    }
+
+    @Test
+    public void changeWithoutTraversal_writtenByTheNextFrameWithoutInvalidating() {
+        int writes = screen.fab.translationWrites;
+        int invalidations = screen.fab.invalidations;
+        appBar.setValue(10.0f);
+        other.setValue(20.0f);
+
+        // animation callbacks only, no pre-draw
+        screen.runFrameCallbacks();
+        assertEquals(writes + 1, screen.fab.translationWrites);
+        assertEquals(30.0f, screen.fab.getTranslationY(), 0.0f);
+        assertEquals(invalidations, screen.fab.invalidations);
+    }
+
+    @Test
+    public void changedBackBeforeTheFrame_notWritten() {
+        int writes = screen.fab.translationWrites;
+        other.setValue(10.0f);
+        other.setValue(0.0f);
+
+        screen.frame();
+        assertEquals(writes, screen.fab.translationWrites);
+    }
+
+    @Test
+    public void framesWithoutChanges_notWritten() {
+        other.setValue(10.0f);
+        screen.frame();
+        int writes = screen.fab.translationWrites;
+
+        screen.frames(10);
+        assertEquals(writes, screen.fab.translationWrites);
+        assertEquals(10.0f, screen.fab.getTranslationY(), 0.0f);
+    }
+
+    @Test
+    public void coalescingTurnedOff_pendingChangeWrittenRightAway() {
+        int writes = screen.fab.translationWrites;
+        other.setValue(10.0f);
+
+        screen.behavior.setCoalesceTranslationUpdates(false);
+        assertEquals(writes + 1, screen.fab.translationWrites);
+        assertEquals(10.0f, screen.fab.getTranslationY(), 0.0f);
+
+        screen.frame();
+        assertEquals(writes + 1, screen.fab.translationWrites);
+    }
+
+    @Test
+    public void detached_pendingChangeWrittenRightAway() {
+        int writes = screen.fab.translationWrites;
+        other.setValue(10.0f);
+
+        screen.coordinatorLayout.removeView(screen.fab);
+        assertEquals(writes + 1, screen.fab.translationWrites);
+        assertEquals(10.0f, screen.fab.getTranslationY(), 0.0f);
+
+        // nothing gets drawn while detached, so there is no pre-draw to wait for
+        other.setValue(20.0f);
+        assertEquals(writes + 2, screen.fab.translationWrites);
+        assertEquals(20.0f, screen.fab.getTranslationY(), 0.0f);
+    }
+
+    @Test
+    public void onlyComponentAnimated_notWrittenPerFrame() {
+        int writes = screen.fab.translationWrites;
+        other.animateTo(100.0f);
+        screen.frames(3);
+        float animated = screen.fab.getTranslationY();
+        assertTrue(animated > 0.0f && animated < 100.0f);
+
+        screen.frames(ANIMATION_FRAMES);
+        assertEquals(writes, screen.fab.translationWrites);
+        assertEquals(100.0f, screen.fab.getTranslationY(), 0.0f);
+    }
+
+    @Test
+    public void onlyComponentAnimationReplaced_notWrittenPerFrame() {
+        int writes = screen.fab.translationWrites;
+        other.animateTo(100.0f);
+        screen.frames(3);
+
+        other.animateTo(50.0f);
+        screen.frames(ANIMATION_FRAMES);
+        assertEquals(writes, screen.fab.translationWrites);
+        assertEquals(50.0f, screen.fab.getTranslationY(), 0.0f);
+    }
+
+    @Test
+    public void otherComponentChangedWhileAnimating_foldedIn() {
+        other.animateTo(100.0f);
+        screen.frames(3);
+        float animated = screen.fab.getTranslationY();
+
+        appBar.setValue(10.0f);
+        screen.frame();
+        // the animation goes on from where it was, with the change on top
+        assertTrue(screen.fab.getTranslationY() >= animated + 10.0f);
+
+        screen.frames(ANIMATION_FRAMES);
+        assertEquals(110.0f, screen.fab.getTranslationY(), 0.0f);
+        assertEquals(110.0f, TranslationRegistry.of(screen.fab).getTranslationY(), 0.0f);
+    }
+
+    @Test
+    public void twoComponentsAnimated_bothArrive() {
+        other.animateTo(100.0f);
+        screen.frames(3);
+        appBar.animateTo(20.0f);
+
+        screen.frames(ANIMATION_FRAMES);
+        assertEquals(120.0f, screen.fab.getTranslationY(), 0.0f);
+    }
+
+    @Test
+    public void animatingComponentSet_animationEndsThere() {
+        other.animateTo(100.0f);
+        screen.frames(3);
+
+        other.setValue(30.0f);
+        screen.frame();
+        assertEquals(30.0f, screen.fab.getTranslationY(), 0.0f);
+        screen.frames(ANIMATION_FRAMES);
+        assertEquals(30.0f, screen.fab.getTranslationY(), 0.0f);
+    }
+
+    @Test
+    public void translationSetDirectlyBetweenOffsetEvents_kept() {
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 4);
+        screen.frame();
+
+        screen.fab.setTranslationY(screen.fab.getTranslationY() - 30.0f);
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 4);
+        screen.frame();
+        assertEquals(screen.appBarTranslationY() - 30.0f, screen.fab.getTranslationY(), 0.0f);
+        assertEquals(screen.fab.getTranslationY(), TranslationRegistry.of(screen.fab).getTranslationY(), 0.0f);
+    }
+
+    @Test
+    public void translationSetDirectlyBetweenImmediateWrites_kept() {
+        screen.behavior.setCoalesceTranslationUpdates(false);
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 4);
+
+        screen.fab.setTranslationY(screen.fab.getTranslationY() - 30.0f);
+        screen.scrollBy(SyncedScreen.TOOLBAR_HEIGHT / 4);
+        assertEquals(screen.appBarTranslationY() - 30.0f, screen.fab.getTranslationY(), 0.0f);
+    }
+}
@@ -19,6 +19,7 @@ package com.lambdasoup.appbarsyncedfabSample;
 import android.content.Intent;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewStub;
@@ -49,6 +50,8 @@ public abstract class BaseAppBarActivity extends AppCompatActivity
         implements NavigationView.OnNavigationItemSelectedListener {
 
     private static final String TAG = BaseAppBarActivity.class.getSimpleName();
+    // enough items to stress the FAB sync with a very long list
+    private static final int MANY_ITEMS = 100000;
     private DrawerLayout drawer;
     private ItemsAdapter itemsAdapter;
 
@@ -78,7 +81,7 @@ public abstract class BaseAppBarActivity extends AppCompatActivity
         final RecyclerView itemsList = findViewById(R.id.content_list);
         itemsAdapter = new ItemsAdapter(new ItemsAdapter.OnItemClickListener() {
             @Override
-            public void onItemClick(Long item) {
+            public void onItemClick(long item) {
                 Snackbar.make(itemsList, getString(R.string.item_clicked, item), Snackbar.LENGTH_LONG).show();
             }
         });
@@ -120,6 +123,33 @@ public abstract class BaseAppBarActivity extends AppCompatActivity
 
 
 
+    @Override
+    protected void onDestroy() {
+        // batches in flight must not keep the adapter, and with it this activity, around
+        itemsAdapter.release();
+        super.onDestroy();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.items, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_add_many_items:
+                itemsAdapter.addItems(MANY_ITEMS);
+                return true;
+            case R.id.action_remove_every_other_item:
+                itemsAdapter.removeEveryOtherItem();
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
     @Override
     public void onBackPressed() {
         if (drawer.isDrawerOpen(GravityCompat.START)) {
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfabSample;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of long items, kept in a primitive array: no boxing on lookup, and no garbage per item,
+ * however many there are. Single changes are binary searched; batches are merged in one pass.
+ * <p/>
+ * Not thread-safe; hand a {@link #copy()} to other threads.
+ */
+final class ItemStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] items;
+    private int size;
+
+    ItemStore() {
+        this(new long[INITIAL_CAPACITY], 0);
+    }
+
+    private ItemStore(long[] items, int size) {
+        this.items = items;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long get(int position) {
+        return items[position];
+    }
+
+    /**
+     * Returns the position of the item, or -1 if it is not contained.
+     */
+    int indexOf(long item) {
+        int position = Arrays.binarySearch(items, 0, size, item);
+        return position >= 0 ? position : -1;
+    }
+
+    /**
+     * Inserts the item in order; returns its position, or -1 if it was contained already.
+     */
+    int add(long item) {
+        int position = Arrays.binarySearch(items, 0, size, item);
+        if (position >= 0) {
+            return -1;
+        }
+        position = -(position + 1);
+        ensureCapacity(size + 1);
+        System.arraycopy(items, position, items, position + 1, size - position);
+        items[position] = item;
+        size++;
+        return position;
+    }
+
+    /**
+     * Removes the item; returns the position it had, or -1 if it was not contained.
+     */
+    int remove(long item) {
+        int position = indexOf(item);
+        if (position >= 0) {
+            System.arraycopy(items, position + 1, items, position, size - position - 1);
+            size--;
+        }
+        return position;
+    }
+
+    /**
+     * Adds the first count of the given sorted, distinct items in one merging pass; items contained
+     * already are skipped.
+     */
+    void addAll(long[] sortedItems, int count) {
+        if (count == 0) {
+            return;
+        }
+        if (size == 0 || sortedItems[0] > items[size - 1]) {
+            // appending, the common case for new items
+            ensureCapacity(size + count);
+            System.arraycopy(sortedItems, 0, items, size, count);
+            size += count;
+            return;
+        }
+        long[] merged = new long[Math.max(INITIAL_CAPACITY, size + count)];
+        int i = 0;
+        int j = 0;
+        int mergedSize = 0;
+        while (i < size || j < count) {
+            if (j == count || (i < size && items[i] < sortedItems[j])) {
+                merged[mergedSize++] = items[i++];
+            } else if (i == size || sortedItems[j] < items[i]) {
+                merged[mergedSize++] = sortedItems[j++];
+            } else {
+                merged[mergedSize++] = items[i++];
+                j++;
+            }
+        }
+        items = merged;
+        size = mergedSize;
+    }
+
+    /**
+     * Removes the first count of the given sorted items in one compacting pass; items not contained
+     * are skipped.
+     */
+    void removeAll(long[] sortedItems, int count) {
+        int j = 0;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            long item = items[i];
+            while (j < count && sortedItems[j] < item) {
+                j++;
+            }
+            if (j == count || sortedItems[j] != item) {
+                items[kept++] = item;
+            }
+        }
+        size = kept;
+    }
+
+    ItemStore copy() {
+        return new ItemStore(Arrays.copyOf(items, Math.max(INITIAL_CAPACITY, size)), size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > items.length) {
+            items = Arrays.copyOf(items, Math.max(capacity, items.length * 2));
+        }
+    }
+}
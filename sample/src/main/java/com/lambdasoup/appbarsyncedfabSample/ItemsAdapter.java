@@ -16,54 +16,160 @@
 
 package com.lambdasoup.appbarsyncedfabSample;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
-import java.util.Objects;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
-import androidx.recyclerview.widget.SortedList;
-import androidx.recyclerview.widget.SortedListAdapterCallback;
 
 /**
- * Adapter holding Integer items for demo purposes.
+ * Adapter holding long items for demo purposes; doubles as stress test for the FAB sync with very
+ * long lists.
+ * <p/>
+ * Items are kept in an {@link ItemStore}, a sorted primitive array, so that lists of 100k items and more
+ * scroll without boxing or garbage. Single items are added and removed in place. Batches are applied
+ * to a copy on a background thread and diffed there; the main thread only swaps in the result and
+ * dispatches the updates. Both sides of the diff are sorted sets, so it is a single merging pass,
+ * instead of DiffUtil, which gets quadratic with the number of changes.
+ * <p/>
+ * The background thread and the results it posts back belong to the adapter; {@link #release()} them
+ * when the adapter is done with, so that neither keeps it and its activity around.
  */
 class ItemsAdapter extends RecyclerView.Adapter<ItemsAdapter.ViewHolder> {
-    private final SortedList<Long> dataset;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // one thread, so that batches get applied in the order they were requested; started with the first batch
+    private ExecutorService batchExecutor;
+    private boolean released = false;
+    private ItemStore dataset = new ItemStore();
+    // counts changes of the dataset, so that batches computed against an outdated copy are noticed
+    private int generation = 0;
     private long currentMaxItem = 0;
     private final OnItemClickListener onItemClickListener;
+    // item text around the item number, split up once so that binding can format without allocating;
+    // null for a text with other placeholders than a single %d, which is then formatted per bind
+    private char[] itemTextPrefix;
+    private char[] itemTextSuffix;
+    private boolean itemTextSplit = false;
 
     ItemsAdapter(OnItemClickListener onItemClickListener) {
         this.onItemClickListener = onItemClickListener;
-        dataset = new SortedList<>(Long.class, new SortedListAdapterCallback<Long>(this) { // yes, we're leaking half-constructed this. Currently, it's fine.
-            @Override
-            public int compare(Long left, Long right) {
-                return Long.compare(left, right);
-            }
+        setHasStableIds(true);
+    }
 
-            @Override
-            public boolean areContentsTheSame(Long oldItem, Long newItem) {
-                return Objects.equals(oldItem, newItem);
-            }
+    void addItem() {
+        int position = dataset.add(currentMaxItem);
+        currentMaxItem++;
+        if (position >= 0) {
+            generation++;
+            notifyItemInserted(position);
+        }
+    }
+
+    /**
+     * Adds the given number of new items in one go, with a single range notification.
+     */
+    void addItems(int count) {
+        long[] items = new long[count];
+        for (int i = 0; i < count; i++) {
+            items[i] = currentMaxItem + i;
+        }
+        currentMaxItem += count;
+        // new items are larger than all others, so they go to the end
+        int positionStart = dataset.size();
+        dataset.addAll(items, count);
+        generation++;
+        notifyItemRangeInserted(positionStart, count);
+    }
+
+    void removeItem(long item) {
+        int position = dataset.remove(item);
+        if (position >= 0) {
+            generation++;
+            notifyItemRemoved(position);
+        }
+    }
+
+    /**
+     * Removes every other item, as an example of a bulk change that does not map to a single range.
+     */
+    void removeEveryOtherItem() {
+        long[] items = new long[(dataset.size() + 1) / 2];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = dataset.get(i * 2);
+        }
+        removeItems(items);
+    }
 
+    /**
+     * Removes the given items, diffing off the main thread.
+     */
+    void removeItems(long[] items) {
+        final long[] sortedItems = Arrays.copyOf(items, items.length);
+        Arrays.sort(sortedItems);
+        applyBatch(new Batch() {
             @Override
-            public boolean areItemsTheSame(Long item1, Long item2) {
-                return Objects.equals(item1, item2);
+            public void applyTo(ItemStore store) {
+                store.removeAll(sortedItems, sortedItems.length);
             }
         });
-        setHasStableIds(true);
     }
 
-    void addItem() {
-        dataset.add(currentMaxItem);
-        currentMaxItem++;
+    private void applyBatch(final Batch batch) {
+        if (released) {
+            return;
+        }
+        if (batchExecutor == null) {
+            batchExecutor = Executors.newSingleThreadExecutor();
+        }
+        final ItemStore oldItems = dataset.copy();
+        final int oldGeneration = generation;
+        batchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ItemStore newItems = oldItems.copy();
+                batch.applyTo(newItems);
+                final ItemsDiff diff = ItemsDiff.between(oldItems, newItems);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (released) {
+                            // posted while being released
+                            return;
+                        }
+                        if (generation != oldGeneration) {
+                            // changed meanwhile; apply the batch to what is there now
+                            applyBatch(batch);
+                            return;
+                        }
+                        dataset = newItems;
+                        generation++;
+                        diff.dispatchUpdatesTo(ItemsAdapter.this);
+                    }
+                });
+            }
+        });
     }
 
-    void removeItem(Long item) {
-        dataset.remove(item);
+    /**
+     * Stops the background thread and drops batches still in flight. Batches requested afterwards are
+     * ignored.
+     */
+    void release() {
+        released = true;
+        if (batchExecutor != null) {
+            batchExecutor.shutdownNow();
+            batchExecutor = null;
+        }
+        mainHandler.removeCallbacksAndMessages(null);
     }
 
     @Override
@@ -82,6 +188,18 @@ class ItemsAdapter extends RecyclerView.Adapter<ItemsAdapter.ViewHolder> {
     @NonNull
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        if (!itemTextSplit) {
+            itemTextSplit = true;
+            String itemText = parent.getContext().getString(R.string.item_text);
+            int placeholder = itemText.indexOf("%d");
+            // like %1$d in a translation, or %% next to it
+            boolean otherPlaceholders = itemText.indexOf('%') != placeholder
+                    || itemText.indexOf('%', placeholder + 2) >= 0;
+            if (placeholder >= 0 && !otherPlaceholders) {
+                itemTextPrefix = itemText.substring(0, placeholder).toCharArray();
+                itemTextSuffix = itemText.substring(placeholder + 2).toCharArray();
+            }
+        }
         View itemView = LayoutInflater.from(parent.getContext()).inflate(android.R.layout.simple_list_item_1, parent, false);
         return new ViewHolder(itemView);
     }
@@ -91,28 +209,135 @@ class ItemsAdapter extends RecyclerView.Adapter<ItemsAdapter.ViewHolder> {
         holder.bindItem(dataset.get(position));
     }
 
-    class ViewHolder extends RecyclerView.ViewHolder {
+    /**
+     * Binds without allocating: the text view is looked up and the click listener set once per holder,
+     * and the item text is formatted into a buffer of the holder, which TextView displays as it is.
+     * Item texts the buffer cannot be filled from are formatted the usual way.
+     */
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        // room for the longest item text; long has at most 19 digits
+        private final char[] text = itemTextPrefix != null
+                ? new char[itemTextPrefix.length + 19 + itemTextSuffix.length] : null;
+        private final TextView textView;
+        private long item;
 
         ViewHolder(View itemView) {
             super(itemView);
+            textView = itemView.findViewById(android.R.id.text1);
+            itemView.setOnClickListener(this);
         }
 
-        void bindItem(final Long item) {
-            TextView textView = itemView.findViewById(android.R.id.text1);
-            textView.setText(textView.getContext().getString(R.string.item_text, item));
+        void bindItem(long item) {
+            this.item = item;
+            if (text != null) {
+                textView.setText(text, 0, formatItemText(item));
+            } else {
+                textView.setText(textView.getContext().getString(R.string.item_text, item));
+            }
+        }
 
-            itemView.setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick(View v) {
-                    if (onItemClickListener != null) {
-                        onItemClickListener.onItemClick(item);
-                    }
-                }
-            });
+        // item text with the given item, which is never negative; returns the length
+        private int formatItemText(long item) {
+            int digits = 1;
+            for (long rest = item / 10; rest != 0; rest /= 10) {
+                digits++;
+            }
+            System.arraycopy(itemTextPrefix, 0, text, 0, itemTextPrefix.length);
+            long rest = item;
+            for (int i = itemTextPrefix.length + digits - 1; i >= itemTextPrefix.length; i--) {
+                text[i] = (char) ('0' + rest % 10);
+                rest /= 10;
+            }
+            System.arraycopy(itemTextSuffix, 0, text, itemTextPrefix.length + digits, itemTextSuffix.length);
+            return itemTextPrefix.length + digits + itemTextSuffix.length;
+        }
+
+        @Override
+        public void onClick(View v) {
+            if (onItemClickListener != null) {
+                onItemClickListener.onItemClick(item);
+            }
         }
     }
 
     public interface OnItemClickListener {
-        void onItemClick(Long item);
+        void onItemClick(long item);
+    }
+
+    // a change to the items, applied to a copy off the main thread
+    private interface Batch {
+        void applyTo(ItemStore store);
+    }
+
+    /**
+     * Difference between two sorted item stores, as ranges of inserted and removed items, found in one
+     * merging pass. Items are unique, so there are no moves, and the same item has the same content.
+     */
+    private static final class ItemsDiff {
+
+        // beyond this, a full refresh is cheaper than dispatching the ranges one by one
+        private static final int MAX_RANGE_UPDATES = 100;
+
+        private static final int INSERT = 0;
+        private static final int REMOVE = 1;
+
+        // triples of type, position and count, in the order they are to be dispatched
+        private int[] updates = new int[3 * 8];
+        private int updateCount = 0;
+
+        static ItemsDiff between(ItemStore oldItems, ItemStore newItems) {
+            ItemsDiff diff = new ItemsDiff();
+            int oldSize = oldItems.size();
+            int newSize = newItems.size();
+            int i = 0;
+            int j = 0;
+            // dispatched front to back: the list is newItems up to j, then oldItems from i
+            while (i < oldSize || j < newSize) {
+                if (j == newSize || (i < oldSize && oldItems.get(i) < newItems.get(j))) {
+                    int start = i;
+                    while (i < oldSize && (j == newSize || oldItems.get(i) < newItems.get(j))) {
+                        i++;
+                    }
+                    diff.add(REMOVE, j, i - start);
+                } else if (i == oldSize || newItems.get(j) < oldItems.get(i)) {
+                    int start = j;
+                    while (j < newSize && (i == oldSize || newItems.get(j) < oldItems.get(i))) {
+                        j++;
+                    }
+                    diff.add(INSERT, start, j - start);
+                } else {
+                    i++;
+                    j++;
+                }
+            }
+            return diff;
+        }
+
+        private void add(int type, int position, int count) {
+            if (updateCount * 3 == updates.length) {
+                updates = Arrays.copyOf(updates, updates.length * 2);
+            }
+            updates[updateCount * 3] = type;
+            updates[updateCount * 3 + 1] = position;
+            updates[updateCount * 3 + 2] = count;
+            updateCount++;
+        }
+
+        void dispatchUpdatesTo(RecyclerView.Adapter<?> adapter) {
+            if (updateCount > MAX_RANGE_UPDATES) {
+                adapter.notifyDataSetChanged();
+                return;
+            }
+            for (int k = 0; k < updateCount; k++) {
+                int position = updates[k * 3 + 1];
+                int count = updates[k * 3 + 2];
+                if (updates[k * 3] == INSERT) {
+                    adapter.notifyItemRangeInserted(position, count);
+                } else {
+                    adapter.notifyItemRangeRemoved(position, count);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfabSample;
+
+import android.app.Activity;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import com.lambdasoup.appbarsyncedfab.testing.Allocations;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.LooperMode;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Rebinding a holder allocates nothing.
+ * <p/>
+ * Robolectric allocates on its own in shadowed view methods, like invalidate, which setting the text
+ * goes through. So a rebind is held against setting a text of the same length on the text view
+ * directly, the least a bind has to do: whatever the adapter itself allocates shows as the difference.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ItemsAdapterTest {
+
+    // items 1000 to 1999 all have four digits: the text changes with each item, but not its length
+    private static final int ITEM_COUNT = 2000;
+    private static final int FIRST_POSITION = 1000;
+    private static final int WARM_UP_BINDS = 200;
+    // the least of a few measurements, so that a collection or class loading in between does not count
+    private static final int MEASUREMENTS = 5;
+
+    private Activity activity;
+    private ItemsAdapter adapter;
+    private ItemsAdapter.ViewHolder holder;
+    private TextView textView;
+    private int position = FIRST_POSITION;
+    private char[][] texts;
+    private int textIndex = 0;
+
+    private final Runnable rebindToNextItem = new Runnable() {
+        @Override
+        public void run() {
+            position = FIRST_POSITION + (position + 1 - FIRST_POSITION) % (ITEM_COUNT - FIRST_POSITION);
+            adapter.onBindViewHolder(holder, position);
+        }
+    };
+
+    private final Runnable setNextText = new Runnable() {
+        @Override
+        public void run() {
+            textIndex = 1 - textIndex;
+            textView.setText(texts[textIndex], 0, texts[textIndex].length);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        activity = Robolectric.buildActivity(Activity.class).setup().get();
+        adapter = new ItemsAdapter(null);
+        adapter.addItems(ITEM_COUNT);
+        holder = adapter.onCreateViewHolder(new FrameLayout(activity), 0);
+        textView = holder.itemView.findViewById(android.R.id.text1);
+        texts = new char[][]{
+                activity.getString(R.string.item_text, (long) FIRST_POSITION).toCharArray(),
+                activity.getString(R.string.item_text, (long) FIRST_POSITION + 1).toCharArray()
+        };
+    }
+
+    @Test
+    public void rebind_allocatesNothing() {
+        for (int i = 0; i < WARM_UP_BINDS; i++) {
+            rebindToNextItem.run();
+            setNextText.run();
+        }
+
+        long rebindBytes = Long.MAX_VALUE;
+        long setTextBytes = Long.MAX_VALUE;
+        for (int i = 0; i < MEASUREMENTS; i++) {
+            rebindBytes = Math.min(rebindBytes, Allocations.measure(rebindToNextItem));
+            setTextBytes = Math.min(setTextBytes, Allocations.measure(setNextText));
+        }
+        assertEquals("bytes allocated by a rebind, beyond setting the text",
+                0, Math.max(0, rebindBytes - setTextBytes));
+        assertEquals(activity.getString(R.string.item_text, adapter.getItemId(position)),
+                textView.getText().toString());
+    }
+
+    @Test
+    public void rebound_clickReportsTheNewItem() {
+        final long[] clicked = {-1};
+        adapter = new ItemsAdapter(new ItemsAdapter.OnItemClickListener() {
+            @Override
+            public void onItemClick(long item) {
+                clicked[0] = item;
+            }
+        });
+        adapter.addItems(ITEM_COUNT);
+        holder = adapter.onCreateViewHolder(new FrameLayout(activity), 0);
+
+        adapter.onBindViewHolder(holder, FIRST_POSITION);
+        adapter.onBindViewHolder(holder, FIRST_POSITION + 1);
+        holder.itemView.performClick();
+        assertEquals(adapter.getItemId(FIRST_POSITION + 1), clicked[0]);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.appbarsyncedfab.testing;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Bytes allocated by the current thread, as counted by the JVM the tests run on.
+ */
+public final class Allocations {
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN;
+
+    static {
+        try {
+            THREAD_MX_BEAN = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        } catch (ClassCastException e) {
+            throw new AssertionError("allocations of threads cannot be counted on this JVM", e);
+        }
+    }
+
+    private Allocations() {
+    }
+
+    public static long allocatedBytes() {
+        return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Bytes allocated by running the given code, not counting what counting itself allocates.
+     */
+    public static long measure(Runnable code) {
+        // the bean may allocate too; take the least of a few empty measurements off
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 8; i++) {
+            long start = allocatedBytes();
+            overhead = Math.min(overhead, allocatedBytes() - start);
+        }
+        long start = allocatedBytes();
+        code.run();
+        return Math.max(0, allocatedBytes() - start - overhead);
+    }
+}